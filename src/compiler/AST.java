@@ -1,15 +1,25 @@
 package compiler;
 
 import java.util.*;
+import java.util.concurrent.*;
 import compiler.lib.*;
 
+import static compiler.lib.NodeKind.*;
+
 public class AST {
+
+	// copia immutabile compatta delle liste di figli (senza wrapper ne' capacita' inutilizzata);
+	// in presenza di errori sintattici le liste possono contenere null, non ammessi da List.copyOf
+	static <T> List<T> compact(List<T> l) {
+		return l.contains(null) ? Collections.unmodifiableList(new ArrayList<>(l)) : List.copyOf(l);
+	}
 	
 	public static class ProgLetInNode extends Node {
 		final List<DecNode> declist;
 		final Node exp;
 		ProgLetInNode(List<DecNode> d, Node e) {
-			declist = Collections.unmodifiableList(d);
+			super(PROG_LET_IN);
+			declist = compact(d);
 			exp = e;
 		}
 
@@ -19,7 +29,7 @@ public class AST {
 
 	public static class ProgNode extends Node {
 		final Node exp;
-		ProgNode(Node e) {exp = e;}
+		ProgNode(Node e) {super(PROG); exp = e;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -27,15 +37,20 @@ public class AST {
 	
 	public static class FunNode extends DecNode {
 		final String id;
+		final int sym;
 		final TypeNode retType;
 		final List<ParNode> parlist;
 		final List<DecNode> declist; 
 		final Node exp;
-		FunNode(String i, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
+		int memo = -1; // tabella di memoizzazione nella SVM (vedi MemoEASTVisitor), -1 se non memoizzata
+		FunNode(String i, int s, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {this(FUN, i, s, rt, pl, dl, e);}
+		FunNode(int k, String i, int s, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
+			super(k);
 	    	id=i; 
+	    	sym=s;
 	    	retType=rt; 
-	    	parlist=Collections.unmodifiableList(pl); 
-	    	declist=Collections.unmodifiableList(dl); 
+	    	parlist=compact(pl); 
+	    	declist=compact(dl); 
 	    	exp=e;
 	    }
 		
@@ -44,8 +59,8 @@ public class AST {
 	}
 
 	public static class FieldNode extends ParNode {
-		FieldNode(String i, TypeNode t) {
-			super(i, t);
+		FieldNode(String i, int s, TypeNode t) {
+			super(FIELD, i, s, t);
 		}
 
 		@Override
@@ -56,8 +71,9 @@ public class AST {
 
 		String label;
 		int offset;
-		MethodNode(String i, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
-            super(i, rt, pl, dl, e);
+		STentry getter; // campo restituito, se il corpo del metodo e' solo quel campo (chiamate compilate come load)
+		MethodNode(String i, int s, TypeNode rt, List<ParNode> pl, List<DecNode> dl, Node e) {
+            super(METHOD, i, s, rt, pl, dl, e);
 		}
 
 		@Override
@@ -66,7 +82,9 @@ public class AST {
 
 	public static class ParNode extends DecNode {
 		final String id;
-		ParNode(String i, TypeNode t) {id = i; type = t;}
+		final int sym;
+		ParNode(String i, int s, TypeNode t) {this(PAR, i, s, t);}
+		ParNode(int k, String i, int s, TypeNode t) {super(k); id = i; sym = s; type = t;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -74,8 +92,13 @@ public class AST {
 	
 	public static class VarNode extends DecNode {
 		final String id;
+		final int sym;
 		final Node exp;
-		VarNode(String i, TypeNode t, Node v) {id = i; type = t; exp = v;}
+		// parole dell'oggetto creato da exp allocato nel frame, sotto la variabile (0: oggetto nello heap,
+		// vedi EscapeEASTVisitor) e offset della variabile, assegnati dalla symbol table
+		int objectWords;
+		int offset;
+		VarNode(String i, int s, TypeNode t, Node v) {super(VAR); id = i; sym = s; type = t; exp = v;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -83,7 +106,7 @@ public class AST {
 		
 	public static class PrintNode extends Node {
 		final Node exp;
-		PrintNode(Node e) {exp = e;}
+		PrintNode(Node e) {super(PRINT); exp = e;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -93,7 +116,7 @@ public class AST {
 		final Node cond;
 		final Node th;
 		final Node el;
-		IfNode(Node c, Node t, Node e) {cond = c; th = t; el = e;}
+		IfNode(Node c, Node t, Node e) {super(IF); cond = c; th = t; el = e;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -102,7 +125,7 @@ public class AST {
 	public static class EqualNode extends Node {
 		final Node left;
 		final Node right;
-		EqualNode(Node l, Node r) {left = l; right = r;}
+		EqualNode(Node l, Node r) {super(EQUAL); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -111,7 +134,7 @@ public class AST {
 	public static class TimesNode extends Node {
 		final Node left;
 		final Node right;
-		TimesNode(Node l, Node r) {left = l; right = r;}
+		TimesNode(Node l, Node r) {super(TIMES); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -120,7 +143,7 @@ public class AST {
 	public static class PlusNode extends Node {
 		final Node left;
 		final Node right;
-		PlusNode(Node l, Node r) {left = l; right = r;}
+		PlusNode(Node l, Node r) {super(PLUS); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -128,12 +151,15 @@ public class AST {
 
 	public static class ClassNode extends DecNode {
 		final String id;
+		final int sym;
 		final List<FieldNode> fieldlist;
 		final List<MethodNode> methodlist;
-		ClassNode(String i, List<FieldNode> pl, List<MethodNode> fl) {
+		ClassNode(String i, int s, List<FieldNode> pl, List<MethodNode> fl) {
+			super(CLASS);
 			id=i;
-			fieldlist =Collections.unmodifiableList(pl);
-			methodlist=Collections.unmodifiableList(fl);
+			sym=s;
+			fieldlist =compact(pl);
+			methodlist=compact(fl);
 		}
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -142,7 +168,7 @@ public class AST {
 	public static class LessEqualNode extends Node {
 		final Node left;
 		final Node right;
-		LessEqualNode(Node l, Node r) {left = l; right = r;}
+		LessEqualNode(Node l, Node r) {super(LESS_EQUAL); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -150,7 +176,7 @@ public class AST {
 	public static class GreaterEqualNode extends Node {
 		final Node left;
 		final Node right;
-		GreaterEqualNode(Node l, Node r) {left = l; right = r;}
+		GreaterEqualNode(Node l, Node r) {super(GREATER_EQUAL); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -158,7 +184,7 @@ public class AST {
 	public static class OrNode extends Node {
 		final Node left;
 		final Node right;
-		OrNode(Node l, Node r) {left = l; right = r;}
+		OrNode(Node l, Node r) {super(OR); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -166,7 +192,7 @@ public class AST {
 	public static class AndNode extends Node {
 		final Node left;
 		final Node right;
-		AndNode(Node l, Node r) {left = l; right = r;}
+		AndNode(Node l, Node r) {super(AND); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -174,7 +200,7 @@ public class AST {
 	public static class DivNode extends Node {
 		final Node left;
 		final Node right;
-		DivNode(Node l, Node r) {left = l; right = r;}
+		DivNode(Node l, Node r) {super(DIV); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -182,19 +208,20 @@ public class AST {
 	public static class MinusNode extends Node {
 		final Node left;
 		final Node right;
-		MinusNode(Node l, Node r) {left = l; right = r;}
+		MinusNode(Node l, Node r) {super(MINUS); left = l; right = r;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
 	}
 	public static class NotNode extends Node {
 		final Node node;
-		NotNode(Node n) {node = n;}
+		NotNode(Node n) {super(NOT); node = n;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
 	}
 	public static class EmptyNode extends Node {
+		EmptyNode() {super(EMPTY);}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -202,13 +229,16 @@ public class AST {
 
 	public static class NewNode extends Node {
 		final String id;
+		final int sym;
 		final List<Node> arglist;
 		STentry entry;
 		int nl;
 
-		public NewNode(String idNode, List<Node> arglist) {
+		public NewNode(String idNode, int sym, List<Node> arglist) {
+			super(NEW);
 			this.id = idNode;
-			this.arglist = arglist;
+			this.sym = sym;
+			this.arglist = compact(arglist);
 		}
 
 		@Override
@@ -217,16 +247,21 @@ public class AST {
 	public static class ClassCallNode extends Node {
 
 		final String id;
+		final int sym;
 		final String idMethod;
+		final int methodSym;
 		final List<Node> arglist;
 		STentry entry;
 		STentry methodEntry;
 		int nl;
 
-		public ClassCallNode(String id, String method, List<Node> p) {
+		public ClassCallNode(String id, int sym, String method, int methodSym, List<Node> p) {
+			super(CLASS_CALL);
 			this.id = id;
+			this.sym = sym;
 			this.idMethod = method;
-			this.arglist = p;
+			this.methodSym = methodSym;
+			this.arglist = compact(p);
 		}
 
 		@Override
@@ -235,12 +270,15 @@ public class AST {
 	
 	public static class CallNode extends Node {
 		final String id;
+		final int sym;
 		final List<Node> arglist;
 		STentry entry;
 		int nl;
-		CallNode(String i, List<Node> p) {
+		CallNode(String i, int s, List<Node> p) {
+			super(CALL);
 			id = i; 
-			arglist = Collections.unmodifiableList(p);
+			sym = s;
+			arglist = compact(p);
 		}
 
 		@Override
@@ -249,25 +287,26 @@ public class AST {
 	
 	public static class IdNode extends Node {
 		final String id;
+		final int sym;
 		STentry entry;
 		int nl;
-		IdNode(String i) {id = i;}
+		IdNode(String i, int s) {super(ID); id = i; sym = s;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
 	}
 	
 	public static class BoolNode extends Node {
-		final Boolean val;
-		BoolNode(boolean n) {val = n;}
+		final boolean val;
+		BoolNode(boolean n) {super(BOOL); val = n;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
 	}
 	
 	public static class IntNode extends Node {
-		final Integer val;
-		IntNode(Integer n) {val = n;}
+		final int val;
+		IntNode(int n) {super(INT); val = n;}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -276,8 +315,10 @@ public class AST {
 	public static class ArrowTypeNode extends TypeNode {
 		final List<TypeNode> parlist;
 		final TypeNode ret;
+		final Map<ArrowTypeNode, Boolean> subtypeOf = new ConcurrentHashMap<>(); // risultati di TypeRels.isSubtype(this, t)
 		ArrowTypeNode(List<TypeNode> p, TypeNode r) {
-			parlist = Collections.unmodifiableList(p); 
+			super(ARROW_TYPE);
+			parlist = compact(p); 
 			ret = r;
 		}
 
@@ -286,12 +327,14 @@ public class AST {
 	}
 	
 	public static class BoolTypeNode extends TypeNode {
+		BoolTypeNode() {super(BOOL_TYPE);}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
 	}
 
 	public static class IntTypeNode extends TypeNode {
+		IntTypeNode() {super(INT_TYPE);}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -300,9 +343,12 @@ public class AST {
 	public static class RefTypeNode extends TypeNode {
 
 		final String classId;
+		final int classSym;
 
-		RefTypeNode(String classId) {
+		RefTypeNode(String classId, int classSym) {
+			super(REF_TYPE);
 			this.classId = classId;
+			this.classSym = classSym;
 		}
 
 		@Override
@@ -314,6 +360,7 @@ public class AST {
 	public static class MethodTypeNode extends TypeNode {
 		final ArrowTypeNode fun;
 		public MethodTypeNode(ArrowTypeNode arrowTypeNode) {
+			super(METHOD_TYPE);
 			this.fun = arrowTypeNode;
 		}
 
@@ -327,6 +374,7 @@ public class AST {
 		ArrayList<MethodTypeNode> allMethods;
 
 		public ClassTypeNode(ArrayList<TypeNode> allFields, ArrayList<MethodTypeNode> allMethods) {
+			super(CLASS_TYPE);
 			this.allFields = allFields;
 			this.allMethods = allMethods;
 		}
@@ -336,6 +384,7 @@ public class AST {
 	}
 
 	public static class EmptyTypeNode extends TypeNode {
+		EmptyTypeNode() {super(EMPTY_TYPE);}
 
 		@Override
 		public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {return visitor.visitNode(this);}
@@ -15,6 +15,8 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 
 	String indent;
     public boolean print;
+    public final Interner symbols = new Interner(); // simboli degli identificatori di questa compilazione
+    public final Types types = new Types(); // tipi canonici di questa compilazione
 	
     ASTGenerationSTVisitor() {}    
     ASTGenerationSTVisitor(boolean debug) { print=debug; }
@@ -139,7 +141,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		if (print) printVarAndProdName(c);
 		List<ParNode> parList = new ArrayList<>();
 		for (int i = 1; i < c.ID().size(); i++) {
-			ParNode p = new ParNode(c.ID(i).getText(),(TypeNode) visit(c.type(i)));
+			ParNode p = new ParNode(c.ID(i).getText(),symbols.intern(c.ID(i).getText()),(TypeNode) visit(c.type(i)));
 			p.setLine(c.ID(i).getSymbol().getLine());
 			parList.add(p);
 		}
@@ -148,7 +150,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		for (DecContext dec : c.dec()) decList.add((DecNode) visit(dec));
 		MethodNode n = null;
 		if (c.ID().size()>0) { //non-incomplete ST
-			n = new MethodNode(c.ID(0).getText(),(TypeNode)visit(c.type(0)),parList,decList,visit(c.exp()));
+			n = new MethodNode(c.ID(0).getText(),symbols.intern(c.ID(0).getText()),(TypeNode)visit(c.type(0)),parList,decList,visit(c.exp()));
 			n.label = c.ID(0).getText();
 			n.setLine(c.FUN().getSymbol().getLine());
 		}
@@ -162,7 +164,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		// navigo tutti i campi da indice 1 (tralasciando quindi l'ID della classe) e cerco il tipo di indice i - 1 dato
 		// che l'indice del primo tipo del primo campo è 0, scalato di 1 dalla lista dei campi
 		for (int i = 1; i < c.ID().size(); i++) {
-			FieldNode p = new FieldNode(c.ID(i).getText(),(TypeNode) visit(c.type(i - 1)));
+			FieldNode p = new FieldNode(c.ID(i).getText(),symbols.intern(c.ID(i).getText()),(TypeNode) visit(c.type(i - 1)));
 			p.setLine(c.ID(i).getSymbol().getLine());
 			fieldList.add(p);
 		}
@@ -170,7 +172,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		for (MethdecContext dec : c.methdec()) funList.add((MethodNode) visit(dec));
 		Node n = null;
 		if (c.ID().size()>0) {
-			n = new ClassNode(c.ID(0).getText(),fieldList,funList);
+			n = new ClassNode(c.ID(0).getText(),symbols.intern(c.ID(0).getText()),fieldList,funList);
 			n.setLine(c.CLASS().getSymbol().getLine());
 		}
 		return n;
@@ -179,9 +181,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 	@Override
 	public Node visitIdType(IdTypeContext c) {
 		if (print) printVarAndProdName(c);
-		Node n = new RefTypeNode(c.ID().getText());
-		n.setLine(c.ID().getSymbol().getLine());
-		return n;
+		return types.ref(c.ID().getText(), symbols.intern(c.ID().getText())); // istanza condivisa: niente linea
 	}
 
 	@Override
@@ -189,7 +189,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		if (print) printVarAndProdName(c);
 		List<Node> arglist = new ArrayList<>();
 		for (ExpContext arg : c.exp()) arglist.add(visit(arg));
-		Node n = new NewNode(c.ID().getText(), arglist);
+		Node n = new NewNode(c.ID().getText(), symbols.intern(c.ID().getText()), arglist);
 		n.setLine(c.NEW().getSymbol().getLine());
 		return n;
 	}
@@ -199,7 +199,8 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		if (print) printVarAndProdName(c);
 		List<Node> arglist = new ArrayList<>();
 		for (ExpContext arg : c.exp()) arglist.add(visit(arg));
-		Node n = new ClassCallNode(c.ID(0).getText(), c.ID(1).getText(), arglist);
+		Node n = new ClassCallNode(c.ID(0).getText(), symbols.intern(c.ID(0).getText()),
+				c.ID(1).getText(), symbols.intern(c.ID(1).getText()), arglist);
 		n.setLine(c.DOT().getSymbol().getLine());
 		return n;
 	}
@@ -217,7 +218,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		if (print) printVarAndProdName(c);
 		Node n = null;
 		if (c.ID()!=null) { //non-incomplete ST
-			n = new VarNode(c.ID().getText(), (TypeNode) visit(c.type()), visit(c.exp()));
+			n = new VarNode(c.ID().getText(), symbols.intern(c.ID().getText()), (TypeNode) visit(c.type()), visit(c.exp()));
 			n.setLine(c.VAR().getSymbol().getLine());
 		}
         return n;
@@ -228,7 +229,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		if (print) printVarAndProdName(c);
 		List<ParNode> parList = new ArrayList<>();
 		for (int i = 1; i < c.ID().size(); i++) {
-			ParNode p = new ParNode(c.ID(i).getText(),(TypeNode) visit(c.type(i)));
+			ParNode p = new ParNode(c.ID(i).getText(),symbols.intern(c.ID(i).getText()),(TypeNode) visit(c.type(i)));
 			p.setLine(c.ID(i).getSymbol().getLine());
 			parList.add(p);
 		}
@@ -237,7 +238,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		for (DecContext dec : c.dec()) decList.add((DecNode) visit(dec));
 		Node n = null;
 		if (c.ID().size()>0) { //non-incomplete ST
-			n = new FunNode(c.ID(0).getText(),(TypeNode)visit(c.type(0)),parList,decList,visit(c.exp()));
+			n = new FunNode(c.ID(0).getText(),symbols.intern(c.ID(0).getText()),(TypeNode)visit(c.type(0)),parList,decList,visit(c.exp()));
 			n.setLine(c.FUN().getSymbol().getLine());
 		}
         return n;
@@ -246,13 +247,13 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 	@Override
 	public Node visitIntType(IntTypeContext c) {
 		if (print) printVarAndProdName(c);
-		return new IntTypeNode();
+		return Types.INT;
 	}
 
 	@Override
 	public Node visitBoolType(BoolTypeContext c) {
 		if (print) printVarAndProdName(c);
-		return new BoolTypeNode();
+		return Types.BOOL;
 	}
 
 	@Override
@@ -300,7 +301,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 	@Override
 	public Node visitId(IdContext c) {
 		if (print) printVarAndProdName(c);
-		Node n = new IdNode(c.ID().getText());
+		Node n = new IdNode(c.ID().getText(), symbols.intern(c.ID().getText()));
 		n.setLine(c.ID().getSymbol().getLine());
 		return n;
 	}
@@ -310,7 +311,7 @@ public class ASTGenerationSTVisitor extends FOOLBaseVisitor<Node> {
 		if (print) printVarAndProdName(c);		
 		List<Node> arglist = new ArrayList<>();
 		for (ExpContext arg : c.exp()) arglist.add(visit(arg));
-		Node n = new CallNode(c.ID().getText(), arglist);
+		Node n = new CallNode(c.ID().getText(), symbols.intern(c.ID().getText()), arglist);
 		n.setLine(c.ID().getSymbol().getLine());
 		return n;
 	}
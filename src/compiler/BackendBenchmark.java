@@ -0,0 +1,56 @@
+package compiler;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+
+import compiler.lib.*;
+import svm.*;
+
+// confronta l'esecuzione dello stesso programma sulla SVM a stack e sulla macchina a registri (svm.RegisterVM):
+// dimensione del codice, istruzioni eseguite e tempo per esecuzione (il migliore su rounds esecuzioni,
+// alternando le due macchine), verificando che l'output sia lo stesso
+public class BackendBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String fileName = args.length > 0 ? args[0] : "provaClassi.fool";
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+		BenchmarkFrontEnd frontEnd = BenchmarkFrontEnd.of(fileName);
+		if (frontEnd == null) return;
+		Node ast = frontEnd.ast;
+
+		CodeGenerationASTVisitor stackCodeGen = new CodeGenerationASTVisitor();
+		RegisterCodeGenerationASTVisitor registerCodeGen = new RegisterCodeGenerationASTVisitor();
+		Set<DecNode> dead = new DeadCodeEASTVisitor().deadDeclarations(ast);
+		stackCodeGen.dead.addAll(dead);
+		registerCodeGen.dead.addAll(dead);
+		SVMParser asm = new SVMParser(new CommonTokenStream(new SVMLexer(CharStreams.fromString(stackCodeGen.visit(ast)))));
+		asm.assembly();
+		int[] stackCode = asm.code;
+		int[] registerCode = registerCodeGen.generate(ast);
+
+		OutputSink.Collector stackOut = new OutputSink.Collector(), registerOut = new OutputSink.Collector();
+		long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+		long stackInstr = 0, registerInstr = 0;
+		for (int r = 0; r < rounds; r++) {
+			stackOut.clear();
+			long start = System.nanoTime();
+			ExecuteVM svm = new ExecuteVM(stackCode, asm.data, stackOut);
+			svm.cpu();
+			best[0] = Math.min(best[0], System.nanoTime()-start);
+			stackInstr = svm.executed();
+
+			registerOut.clear();
+			start = System.nanoTime();
+			RegisterVM rvm = new RegisterVM(registerCode, registerOut);
+			rvm.cpu();
+			best[1] = Math.min(best[1], System.nanoTime()-start);
+			registerInstr = rvm.executed();
+		}
+		int stackWords = asm.codeWords();
+		System.out.println(String.format("stack SVM:   %7d code words %10d instructions %9.3f ms", stackWords, stackInstr, best[0]/1e6));
+		System.out.println(String.format("register VM: %7d code words %10d instructions %9.3f ms   speedup %.2fx",
+			registerCode.length, registerInstr, best[1]/1e6, (double) best[0]/best[1]));
+		System.out.println("Same output: "+stackOut.text().equals(registerOut.text()));
+	}
+}
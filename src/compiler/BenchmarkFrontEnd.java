@@ -0,0 +1,41 @@
+package compiler;
+
+import java.io.*;
+import org.antlr.v4.runtime.*;
+
+import compiler.FOOLParser.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+// front-end completo di un file (lexing, parsing, AST, symbol table e type checking), comune ai benchmark
+final class BenchmarkFrontEnd {
+
+	final Node ast; // AST arricchito
+	final Types types;
+
+	private BenchmarkFrontEnd(Node a, Types t) {
+		ast = a;
+		types = t;
+	}
+
+	// ritorna null, dopo averlo segnalato, se il programma ha errori front-end
+	static BenchmarkFrontEnd of(String fileName) throws IOException {
+		FOOLLexer lexer = new FOOLLexer(CharStreams.fromFileName(fileName));
+		TwoStageParse<FOOLParser,ProgContext> parse = TwoStageParse.parse(new CommonTokenStream(lexer), FOOLParser::new, FOOLParser::prog);
+		ASTGenerationSTVisitor astVisitor = new ASTGenerationSTVisitor();
+		Node ast = astVisitor.visit(parse.tree);
+		SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(astVisitor.types);
+		symtableVisitor.visit(ast);
+		boolean typeError = false;
+		try {
+			new TypeCheckEASTVisitor(astVisitor.types).visit(ast);
+		} catch (IncomplException | TypeException e) {
+			typeError = true;
+		}
+		if (lexer.lexicalErrors+parse.parser.getNumberOfSyntaxErrors()+symtableVisitor.stErrors+FOOLlib.typeErrors > 0 || typeError) {
+			System.out.println("The program has front-end errors.");
+			return null;
+		}
+		return new BenchmarkFrontEnd(ast, astVisitor.types);
+	}
+}
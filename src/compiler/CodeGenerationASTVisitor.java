@@ -7,28 +7,104 @@ import svm.ExecuteVM;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 import static compiler.lib.FOOLlib.*;
 import static svm.ExecuteVM.MEMSIZE;
 
 public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidException> {
 
-  CodeGenerationASTVisitor() {}
-  CodeGenerationASTVisitor(boolean debug) {super(false,debug);} //enables print for debugging
+  // dichiarazioni morte (vedi DeadCodeEASTVisitor): al loro posto viene allocata una cella con valore 0,
+  // cosi' gli offset delle altre dichiarazioni non cambiano
+  final Set<DecNode> dead;
+
+  // generazione parallela (vedi visitParallel). Una copia genera il codice della funzione root, con label locali
+  // prefissate dalla label di root, e raccoglie in fragments il codice inserito con putCode
+  private final String prefix;
+  private int labels = 0, funLabels = 0;
+  private FunNode root;
+  private List<String> fragments;
+  private ForkJoinPool pool; // visitor principale: frammenti delle copie da collegare in ordine
+  private List<ForkJoinTask<List<String>>> pending;
+
+  CodeGenerationASTVisitor() {dead = new HashSet<>(); prefix = null;}
+  CodeGenerationASTVisitor(boolean debug) {super(false,debug); dead = new HashSet<>(); prefix = null;} //enables print for debugging
+
+  private CodeGenerationASTVisitor(CodeGenerationASTVisitor parent, FunNode n, String label) {
+	dead = parent.dead;
+	prefix = label;
+	root = n;
+	fragments = new ArrayList<>();
+  }
+
+	// come visit, ma il codice delle funzioni e dei metodi di primo livello viene generato in parallelo su pool,
+	// ognuno da una copia del visitor, e collegato nell'ordine delle dichiarazioni prima del codice del programma:
+	// le label delle copie sono locali, per cui il codice prodotto non dipende dall'ordine di esecuzione dei task
+	String visitParallel(Node ast, ForkJoinPool p) {
+		if (print) return visit(ast); // la stampa dei nodi non e' ordinabile
+		pool = p;
+		pending = new ArrayList<>();
+		try {
+			return visit(ast);
+		} finally {
+			pool = null;
+			pending = null;
+		}
+	}
+
+	// visitor principale: genera in un task il codice della funzione o del metodo n, con label label
+	private void fork(FunNode n, String label) {
+		CodeGenerationASTVisitor f = new CodeGenerationASTVisitor(this, n, label);
+		pending.add(pool.submit(() -> {
+			f.visit(n);
+			return f.fragments;
+		}));
+	}
+
+	// inserisce con putCode il codice delle copie, nell'ordine in cui sono state create
+	private void link() {
+		for (ForkJoinTask<List<String>> t : pending)
+			for (String c : t.join()) FOOLlib.putCode(c);
+		pending.clear();
+	}
+
+	private String freshLabel() {
+		return prefix == null ? FOOLlib.freshLabel() : prefix+"label"+labels++;
+	}
+
+	private String freshFunLabel() {
+		return prefix == null ? FOOLlib.freshFunLabel() : prefix+"function"+funLabels++;
+	}
+
+	private void putCode(String c) {
+		if (fragments != null) fragments.add(c);
+		else FOOLlib.putCode(c);
+	}
 
 	@Override
 	public String visitNode(ProgLetInNode n) {
 		if (print) printNode(n);
 		String declCode = null;
 		for (Node dec : n.declist) declCode=nlJoin(declCode,visit(dec));
+		String expCode = visit(n.exp);
+		if (pending != null) link();
+		return progLetInCode(declCode, expCode);
+	}
+
+	// layout del programma con dichiarazioni, dato il codice delle dichiarazioni e dell'espressione principale
+	static String progLetInCode(String declCode, String expCode) {
 		return nlJoin(
 			"push 0",
 			"/* end class code */",
 			declCode, // generate code for declarations (allocation)
 			"/* end decl code */",
-			visit(n.exp),
+			"main:", // inizio dell'espressione principale: punto di snapshot dello stato inizializzato (vedi svm.Snapshot)
+			expCode,
 			"halt",
 			getCode()
 		);
@@ -127,20 +203,48 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	@Override
 	public String visitNode(FunNode n) {
 		if (print) printNode(n,n.id);
+		if (dead.contains(n)) return "push 0";
+		if (pool != null) {
+			String funl = freshFunLabel();
+			fork(n, funl);
+			return "push "+funl;
+		}
 		String declCode = null, popDecl = null, popParl = null;
 		for (Node dec : n.declist) {
 			declCode = nlJoin(declCode,visit(dec));
-			popDecl = nlJoin(popDecl,"pop");
+			popDecl = nlJoin(popDecl,pops(dec));
 		}
 		for (int i=0;i<n.parlist.size();i++) popParl = nlJoin(popParl,"pop");
-		String funl = freshFunLabel();
+		String funl = n == root ? prefix : freshFunLabel();
+		String memoCode = null; // funzione memoizzata (vedi MemoEASTVisitor)
+		if (n.memo >= 0) {
+			String miss = freshLabel();
+			memoCode = nlJoin(
+				"push "+n.parlist.size(),
+				"mget "+n.memo, // lookup con gli argomenti: risultato memorizzato e 1, oppure 0 e 0
+				"push 0",
+				"beq "+miss,
+				"stm", // risultato memorizzato: ritorno senza dichiarazioni locali da rimuovere
+				"sra",
+				"pop",
+				popParl,
+				"sfp",
+				"ltm",
+				"lra",
+				"js",
+				miss+":",
+				"pop"
+			);
+		}
 		putCode(
 			nlJoin(
 				funl+":",
 				"cfp", // set $fp to $sp value
 				"lra", // load $ra value
+				memoCode,
 				declCode, // generate code for local declarations (they use the new $fp!!!)
 				visit(n.exp), // generate code for function body expression
+				n.memo >= 0 ? nlJoin("push "+n.parlist.size(), "mput "+n.memo) : null, // memorizza il risultato
 				"stm", // set $tm to popped value (function result)
 				popDecl, // remove local declarations from stack
 				"sra", // set $ra to popped value
@@ -158,10 +262,14 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	@Override
 	public String visitNode(MethodNode n) throws VoidException {
 		if (print) printNode(n,n.id);
+		if (pool != null) {
+			fork(n, n.label);
+			return null;
+		}
 		String declCode = null, popDecl = null, popParl = null;
 		for (Node dec : n.declist) {
 			declCode = nlJoin(declCode,visit(dec));
-			popDecl = nlJoin(popDecl,"pop");
+			popDecl = nlJoin(popDecl,pops(dec));
 		}
 		for (int i=0;i<n.parlist.size();i++)
 			popParl = nlJoin(popParl,"pop");
@@ -204,36 +312,28 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 	@Override
 	public String visitNode(ClassNode n) throws VoidException {
 		if (print) printNode(n,n.id);
+		if (dead.contains(n)) return "push 0";
 		ArrayList<String> dispatchTable = new ArrayList<>();
 		for(MethodNode method : n.methodlist) {
+			if (dead.contains(method)) continue; // nessun codice e nessuna label
 			String freshLabel = freshFunLabel();
 			method.label = freshLabel;
 			visit(method);
-			if (method.offset < dispatchTable.size()) {
-				dispatchTable.set(method.offset, method.label);
-			} else {
-				dispatchTable.add(method.offset, method.label);
-			}
+			while (dispatchTable.size() <= method.offset) dispatchTable.add(null); // metodi morti
+			dispatchTable.set(method.offset, method.label);
 		}
 
-		String labels = "";
-		for (String methodLabel : dispatchTable) {
-			labels = nlJoin(labels,
-					"/* method " + methodLabel + "*/",
-					"push " +methodLabel, // pusho la label sullo stack
-					"lhp", // pusho hp su stack
-					"sw", // poppo due valori: hp e label presenti su stack e memorizzo label in indirizzo presente in hp
-					"push 1", // pusho 1 per incrementare hp
-					"lhp", // pusho hp per eseguire la somma con 1
-					"add", // poppo due valori e li sommo: hp + 1
-					"shp" // memorizzo il risultato della somma in hp (hp = hp + 1)
-			);
-		}
+		// la dispatch table e' nel segmento dati: la dispone l'assembler e la SVM la carica in memoria all'avvio
+		String tableLabel = freshLabel();
+		String words = null;
+		for (String methodLabel : dispatchTable)
+			words = nlJoin(words, "word " + (methodLabel == null ? "0" : methodLabel)); // 0 per un metodo morto
 
 		return nlJoin(
 				"/* class " + n.id + " declaration */",
-				"lhp", // push the content of hp register to the top of the stack
-				labels
+				"data " + tableLabel,
+				words,
+				"push " + tableLabel // dispatch pointer
 		);
 	}
 
@@ -250,6 +350,19 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		String argCode = null, getAR = null;
 		for (int i=n.arglist.size()-1;i>=0;i--) argCode=nlJoin(argCode,visit(n.arglist.get(i)));
 		for (int i = 0;i<n.nl-n.entry.nl;i++) getAR=nlJoin(getAR,"lw");
+		if (n.methodEntry.decl instanceof MethodNode && ((MethodNode) n.methodEntry.decl).getter != null) {
+			// getter: load del campo direttamente dall'oggetto (con null fallisce l'accesso alla memoria, come la chiamata)
+			return nlJoin(
+					"/* getter " + n.idMethod + " inline */",
+					"lfp", getAR,
+					"push " + n.entry.offset,
+					"add",
+					"lw", // object pointer
+					"push " + ((MethodNode) n.methodEntry.decl).getter.offset,
+					"add",
+					"lw" // load del campo
+			);
+		}
 		return nlJoin(
 				"/* method " + n.idMethod + " recall */",
 				"lfp", // load Control Link (pointer to frame of method ID1.ID2 caller)
@@ -316,10 +429,40 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 
 	}
 
+	// pop delle parole occupate nel frame dalla dichiarazione dec
+	private static String pops(Node dec) {
+		String code = "pop";
+		if (dec instanceof VarNode) for (int i = 0; i < ((VarNode) dec).objectWords; i++) code = nlJoin(code,"pop");
+		return code;
+	}
+
 	@Override
 	public String visitNode(VarNode n) {
 		if (print) printNode(n,n.id);
-		return visit(n.exp);
+		if (dead.contains(n)) return pushZeros(1+n.objectWords);
+		if (n.objectWords == 0) return visit(n.exp);
+		// oggetto allocato nel frame: sotto la variabile il dispatch pointer (a cui punta la variabile) e i campi,
+		// con lo stesso layout dello heap
+		NewNode obj = (NewNode) n.exp;
+		String argCode = null;
+		for (Node arg : obj.arglist) argCode = nlJoin(argCode, visit(arg));
+		return nlJoin(
+				"/* new " + obj.id + " nel frame */",
+				"lfp",
+				"push " + (n.offset-1),
+				"add", // object pointer: la parola sotto la variabile
+				"push " + MEMSIZE,
+				"push " + obj.entry.offset,
+				"add",
+				"lw", // dispatch pointer
+				argCode // campi
+		);
+	}
+
+	private static String pushZeros(int words) {
+		String code = null;
+		for (int i = 0; i < words; i++) code = nlJoin(code,"push 0");
+		return code;
 	}
 
 	@Override
@@ -400,6 +543,15 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 		for (int i = 0;i<n.nl-n.entry.nl;i++)
 			getAR=nlJoin(getAR,"lw");
 
+		if (n.entry.decl instanceof MethodNode && ((MethodNode) n.entry.decl).getter != null) {
+			return nlJoin(
+					"/* getter " + n.id + " inline */",
+					"lfp", getAR, // object pointer (access link del metodo)
+					"push " + ((MethodNode) n.entry.decl).getter.offset,
+					"add",
+					"lw" // load del campo
+			);
+		}
 		if(n.entry.type instanceof MethodTypeNode){
 			return nlJoin(
 					"lfp", // load Control Link (pointer to frame of function "id" caller)
@@ -449,13 +601,13 @@ public class CodeGenerationASTVisitor extends BaseASTVisitor<String, VoidExcepti
 
 	@Override
 	public String visitNode(BoolNode n) {
-		if (print) printNode(n,n.val.toString());
+		if (print) printNode(n,String.valueOf(n.val));
 		return "push "+(n.val?1:0);
 	}
 
 	@Override
 	public String visitNode(IntNode n) {
-		if (print) printNode(n,n.val.toString());
+		if (print) printNode(n,String.valueOf(n.val));
 		return "push "+n.val;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,465 @@
+package compiler;
+
+import java.lang.ref.Reference;
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+
+import compiler.AST.*;
+import compiler.FOOLParser.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+import static compiler.lib.NodeKind.*;
+
+// rappresentazione compatta dell'AST (struct-of-arrays): ogni nodo e' un indice in array paralleli
+// (tag del tipo di nodo, linea, due payload interi) e i figli di un nodo occupano un intervallo
+// contiguo dell'array children. I nodi sono aggiunti in post-ordine, quindi l'intervallo dei figli
+// del nodo n va da first[n] a first[n+1]. Letterali e identificatori sono primitivi (gli identificatori
+// sono simboli dell'Interner), i tipi (canonici, vedi Types) sono indici in un pool.
+// Viene costruita direttamente dal parse tree (of), senza passare dall'AST a oggetti; symbol table e
+// type checking lavorano sugli indici (vedi CompactCheck). L'AST a oggetti (toAST) serve solo al back end.
+// Payload e figli per tipo di nodo:
+//   PROG_LET_IN                                figli: dichiarazioni, exp
+//   PROG, PRINT, NOT                           figli: exp
+//   FUN, METHOD   a=sym b=tipo di ritorno      figli: parametri (PAR), dichiarazioni, exp
+//   PAR, FIELD    a=sym b=tipo
+//   VAR           a=sym b=tipo                 figli: exp
+//   CLASS         a=sym                        figli: campi (FIELD), metodi
+//   CALL, NEW     a=sym                        figli: argomenti
+//   CLASS_CALL    a=sym b=simbolo del metodo   figli: argomenti
+//   ID            a=sym
+//   INT, BOOL     a=valore (BOOL: 0/1)
+//   IF                                         figli: cond, th, el
+//   operatori binari                           figli: left, right
+//   EMPTY
+// Un figlio mancante (parse tree incompleto per errori sintattici) vale NONE.
+public class CompactAST {
+
+	static final int NONE = -1;
+
+	private byte[] kind = new byte[256];
+	private int[] line = new int[256];
+	private int[] a = new int[256];
+	private int[] b = new int[256];
+	private int[] first = new int[257];
+	private int[] children = new int[256];
+	private int size = 0, edges = 0;
+	private int root = NONE;
+
+	private final List<TypeNode> typePool = new ArrayList<>();
+	private final Map<TypeNode, Integer> typeIndex = new IdentityHashMap<>();
+	final Interner symbols = new Interner(); // simboli degli identificatori di questa compilazione
+	final Types types = new Types(); // tipi canonici di questa compilazione
+
+	// costruisce la rappresentazione compatta dal parse tree prodotto da FOOLParser.prog
+	static CompactAST of(ParseTree st) {
+		CompactAST arena = new CompactAST();
+		arena.root = arena.new Builder().visit(st);
+		arena.trim();
+		return arena;
+	}
+
+	int root() { return root; }
+	int size() { return size; }
+	int kind(int n) { return kind[n]; }
+	int line(int n) { return line[n]; }
+	int childCount(int n) { return first[n+1]-first[n]; }
+	int child(int n, int i) { return children[first[n]+i]; }
+	int lastChild(int n) { return children[first[n+1]-1]; }
+	int sym(int n) { return a[n]; }
+	String id(int n) { return symbols.name(a[n]); }
+	int intVal(int n) { return a[n]; }
+	boolean boolVal(int n) { return a[n] != 0; }
+	int methodSym(int n) { return b[n]; }
+	TypeNode type(int n) { return b[n] == NONE ? null : typePool.get(b[n]); }
+
+	// numero dei figli iniziali del tipo di nodo k (parametri di FUN/METHOD, campi di CLASS)
+	int leadingChildren(int n, int k) {
+		int i = 0, c = childCount(n);
+		while (i < c && child(n, i) != NONE && kind(child(n, i)) == k) i++;
+		return i;
+	}
+
+	// byte occupati dagli array (header di 16 byte, allineamento a 8)
+	long bytes() {
+		return array(kind.length)+array(4L*line.length)+array(4L*a.length)+array(4L*b.length)
+			+array(4L*first.length)+array(4L*children.length);
+	}
+
+	private static long array(long bytes) { return (16+bytes+7) & ~7; }
+
+	@Override
+	public String toString() {
+		return "Compact AST: "+size+" nodes, "+edges+" child links, "+bytes()/1024+" KB of arrays.";
+	}
+
+	private void trim() {
+		kind = Arrays.copyOf(kind, size);
+		line = Arrays.copyOf(line, size);
+		a = Arrays.copyOf(a, size);
+		b = Arrays.copyOf(b, size);
+		first = Arrays.copyOf(first, size+1);
+		children = Arrays.copyOf(children, edges);
+	}
+
+	private int typeRef(TypeNode t) {
+		if (t == null) return NONE;
+		return typeIndex.computeIfAbsent(t, x -> { typePool.add(x); return typePool.size()-1; });
+	}
+
+	// aggiunge un nodo i cui figli sono gli elementi di pending da from in poi
+	private int add(int k, int l, int va, int vb, int from) {
+		if (size+1 == first.length) {
+			int cap = size*2;
+			kind = Arrays.copyOf(kind, cap);
+			line = Arrays.copyOf(line, cap);
+			a = Arrays.copyOf(a, cap);
+			b = Arrays.copyOf(b, cap);
+			first = Arrays.copyOf(first, cap+1);
+		}
+		int n = pendingSize-from;
+		if (edges+n > children.length) children = Arrays.copyOf(children, Math.max(edges+n, children.length*2));
+		System.arraycopy(pending, from, children, edges, n);
+		edges += n;
+		pendingSize = from;
+		kind[size] = (byte) k;
+		line[size] = l;
+		a[size] = va;
+		b[size] = vb;
+		first[size+1] = edges;
+		return size++;
+	}
+
+	// indici dei figli gia' costruiti in attesa del nodo padre
+	private int[] pending = new int[64];
+	private int pendingSize = 0;
+
+	private void push(int n) {
+		if (pendingSize == pending.length) pending = Arrays.copyOf(pending, pendingSize*2);
+		pending[pendingSize++] = n;
+	}
+
+	// stessa struttura, linee, simboli (nello stesso ordine) e tipi di ASTGenerationSTVisitor;
+	// i nodi il cui padre manca per errori sintattici restano nell'arena, irraggiungibili
+	private class Builder extends FOOLBaseVisitor<Integer> {
+
+		@Override
+		public Integer visit(ParseTree t) {
+			if (t == null) return NONE;
+			Integer n = super.visit(t);
+			return n == null ? NONE : n;
+		}
+
+		private TypeNode typeOf(TypeContext c) {
+			if (c instanceof IntTypeContext) return Types.INT;
+			if (c instanceof BoolTypeContext) return Types.BOOL;
+			if (c instanceof IdTypeContext) {
+				String id = ((IdTypeContext) c).ID().getText();
+				return types.ref(id, symbols.intern(id));
+			}
+			return null;
+		}
+
+		private int binary(int k, Token op, ExpContext left, ExpContext right) {
+			int from = pendingSize;
+			push(visit(left));
+			push(visit(right));
+			return add(k, op.getLine(), 0, NONE, from);
+		}
+
+		private int unary(int k, int l, ParseTree e) {
+			int from = pendingSize;
+			push(visit(e));
+			return add(k, l, 0, NONE, from);
+		}
+
+		private void args(List<ExpContext> l) {
+			for (ExpContext arg : l) push(visit(arg));
+		}
+
+		// parametri (ID e tipi da indice 1), dichiarazioni ed exp di fundec e methdec
+		private Integer function(int k, List<TerminalNode> ids, List<TypeContext> typeList, List<DecContext> decs, ExpContext exp, Token fun) {
+			int from = pendingSize;
+			for (int i = 1; i < ids.size(); i++) {
+				int sym = symbols.intern(ids.get(i).getText());
+				push(add(PAR, ids.get(i).getSymbol().getLine(), sym, typeRef(typeOf(i < typeList.size() ? typeList.get(i) : null)), pendingSize));
+			}
+			for (DecContext dec : decs) push(visit(dec));
+			if (ids.isEmpty()) { // incomplete ST
+				pendingSize = from;
+				return NONE;
+			}
+			int sym = symbols.intern(ids.get(0).getText());
+			int ret = typeRef(typeOf(typeList.isEmpty() ? null : typeList.get(0)));
+			push(visit(exp));
+			return add(k, fun.getLine(), sym, ret, from);
+		}
+
+		@Override
+		public Integer visitProg(ProgContext c) { return visit(c.progbody()); }
+
+		@Override
+		public Integer visitLetInProg(LetInProgContext c) {
+			int from = pendingSize;
+			for (CldecContext dec : c.cldec()) push(visit(dec));
+			for (DecContext dec : c.dec()) push(visit(dec));
+			push(visit(c.exp()));
+			return add(PROG_LET_IN, -1, 0, NONE, from);
+		}
+
+		@Override
+		public Integer visitNoDecProg(NoDecProgContext c) { return unary(PROG, -1, c.exp()); }
+
+		@Override
+		public Integer visitTimesDiv(TimesDivContext c) {
+			if (c.DIV() != null) return binary(DIV, c.DIV().getSymbol(), c.exp(0), c.exp(1));
+			if (c.TIMES() != null) return binary(TIMES, c.TIMES().getSymbol(), c.exp(0), c.exp(1));
+			return NONE;
+		}
+
+		@Override
+		public Integer visitPlusMinus(PlusMinusContext c) {
+			if (c.MINUS() != null) return binary(MINUS, c.MINUS().getSymbol(), c.exp(0), c.exp(1));
+			if (c.PLUS() != null) return binary(PLUS, c.PLUS().getSymbol(), c.exp(0), c.exp(1));
+			return NONE;
+		}
+
+		@Override
+		public Integer visitAndOr(AndOrContext c) {
+			if (c.AND() != null) return binary(AND, c.AND().getSymbol(), c.exp(0), c.exp(1));
+			if (c.OR() != null) return binary(OR, c.OR().getSymbol(), c.exp(0), c.exp(1));
+			return NONE;
+		}
+
+		@Override
+		public Integer visitComp(CompContext c) {
+			if (c.EQ() != null) return binary(EQUAL, c.EQ().getSymbol(), c.exp(0), c.exp(1));
+			if (c.GE() != null) return binary(GREATER_EQUAL, c.GE().getSymbol(), c.exp(0), c.exp(1));
+			if (c.LE() != null) return binary(LESS_EQUAL, c.LE().getSymbol(), c.exp(0), c.exp(1));
+			return NONE;
+		}
+
+		@Override
+		public Integer visitNot(NotContext c) { return unary(NOT, c.NOT().getSymbol().getLine(), c.exp()); }
+
+		@Override
+		public Integer visitMethdec(MethdecContext c) {
+			return function(METHOD, c.ID(), c.type(), c.dec(), c.exp(), c.FUN().getSymbol());
+		}
+
+		@Override
+		public Integer visitFundec(FundecContext c) {
+			return function(FUN, c.ID(), c.type(), c.dec(), c.exp(), c.FUN().getSymbol());
+		}
+
+		@Override
+		public Integer visitCldec(CldecContext c) {
+			int from = pendingSize;
+			for (int i = 1; i < c.ID().size(); i++) {
+				int sym = symbols.intern(c.ID(i).getText());
+				push(add(FIELD, c.ID(i).getSymbol().getLine(), sym, typeRef(typeOf(c.type(i-1))), pendingSize));
+			}
+			for (MethdecContext dec : c.methdec()) push(visit(dec));
+			if (c.ID().isEmpty()) {
+				pendingSize = from;
+				return NONE;
+			}
+			return add(CLASS, c.CLASS().getSymbol().getLine(), symbols.intern(c.ID(0).getText()), NONE, from);
+		}
+
+		@Override
+		public Integer visitVardec(VardecContext c) {
+			if (c.ID() == null) return NONE;
+			int sym = symbols.intern(c.ID().getText());
+			int type = typeRef(typeOf(c.type()));
+			int from = pendingSize;
+			push(visit(c.exp()));
+			return add(VAR, c.VAR().getSymbol().getLine(), sym, type, from);
+		}
+
+		@Override
+		public Integer visitNew(NewContext c) {
+			int from = pendingSize;
+			args(c.exp());
+			return add(NEW, c.NEW().getSymbol().getLine(), symbols.intern(c.ID().getText()), NONE, from);
+		}
+
+		@Override
+		public Integer visitDotCall(DotCallContext c) {
+			int from = pendingSize;
+			args(c.exp());
+			int sym = symbols.intern(c.ID(0).getText());
+			return add(CLASS_CALL, c.DOT().getSymbol().getLine(), sym, symbols.intern(c.ID(1).getText()), from);
+		}
+
+		@Override
+		public Integer visitNull(NullContext c) {
+			return add(EMPTY, c.NULL().getSymbol().getLine(), 0, NONE, pendingSize);
+		}
+
+		@Override
+		public Integer visitInteger(IntegerContext c) {
+			int v = Integer.parseInt(c.NUM().getText());
+			return add(INT, -1, c.MINUS() == null ? v : -v, NONE, pendingSize);
+		}
+
+		@Override
+		public Integer visitTrue(TrueContext c) { return add(BOOL, -1, 1, NONE, pendingSize); }
+
+		@Override
+		public Integer visitFalse(FalseContext c) { return add(BOOL, -1, 0, NONE, pendingSize); }
+
+		@Override
+		public Integer visitIf(IfContext c) {
+			int from = pendingSize;
+			for (int i = 0; i < 3; i++) push(visit(c.exp(i)));
+			return add(IF, c.IF().getSymbol().getLine(), 0, NONE, from);
+		}
+
+		@Override
+		public Integer visitPrint(PrintContext c) { return unary(PRINT, -1, c.exp()); }
+
+		@Override
+		public Integer visitPars(ParsContext c) { return visit(c.exp()); }
+
+		@Override
+		public Integer visitId(IdContext c) {
+			return add(ID, c.ID().getSymbol().getLine(), symbols.intern(c.ID().getText()), NONE, pendingSize);
+		}
+
+		@Override
+		public Integer visitCall(CallContext c) {
+			int from = pendingSize;
+			args(c.exp());
+			return add(CALL, c.ID().getSymbol().getLine(), symbols.intern(c.ID().getText()), NONE, from);
+		}
+	}
+
+	// costruisce l'AST a oggetti (non arricchito) su cui lavora il back end
+	Node toAST() { return toAST(root); }
+
+	private Node toAST(int n) {
+		if (n == NONE) return null;
+		Node node;
+		int c = childCount(n);
+		switch (kind(n)) {
+			case PROG_LET_IN: node = new ProgLetInNode(decs(n, 0, c-1), toAST(lastChild(n))); break;
+			case PROG: node = new ProgNode(toAST(child(n, 0))); break;
+			case FUN: case METHOD: {
+				int np = leadingChildren(n, PAR);
+				List<ParNode> pars = new ArrayList<>();
+				for (int i = 0; i < np; i++) pars.add((ParNode) toAST(child(n, i)));
+				if (kind(n) == FUN) node = new FunNode(id(n), sym(n), type(n), pars, decs(n, np, c-1), toAST(lastChild(n)));
+				else {
+					MethodNode m = new MethodNode(id(n), sym(n), type(n), pars, decs(n, np, c-1), toAST(lastChild(n)));
+					m.label = id(n);
+					node = m;
+				}
+				break;
+			}
+			case PAR: node = new ParNode(id(n), sym(n), type(n)); break;
+			case FIELD: node = new FieldNode(id(n), sym(n), type(n)); break;
+			case VAR: node = new VarNode(id(n), sym(n), type(n), toAST(child(n, 0))); break;
+			case CLASS: {
+				int nf = leadingChildren(n, FIELD);
+				List<FieldNode> fields = new ArrayList<>();
+				for (int i = 0; i < nf; i++) fields.add((FieldNode) toAST(child(n, i)));
+				List<MethodNode> methods = new ArrayList<>();
+				for (int i = nf; i < c; i++) methods.add((MethodNode) toAST(child(n, i)));
+				node = new ClassNode(id(n), sym(n), fields, methods);
+				break;
+			}
+			case PRINT: node = new PrintNode(toAST(child(n, 0))); break;
+			case NOT: node = new NotNode(toAST(child(n, 0))); break;
+			case IF: node = new IfNode(toAST(child(n, 0)), toAST(child(n, 1)), toAST(child(n, 2))); break;
+			case EQUAL: node = new EqualNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case TIMES: node = new TimesNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case PLUS: node = new PlusNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case GREATER_EQUAL: node = new GreaterEqualNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case LESS_EQUAL: node = new LessEqualNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case MINUS: node = new MinusNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case OR: node = new OrNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case DIV: node = new DivNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case AND: node = new AndNode(toAST(child(n, 0)), toAST(child(n, 1))); break;
+			case CALL: node = new CallNode(id(n), sym(n), args(n)); break;
+			case NEW: node = new NewNode(id(n), sym(n), args(n)); break;
+			case CLASS_CALL: node = new ClassCallNode(id(n), sym(n), symbols.name(methodSym(n)), methodSym(n), args(n)); break;
+			case ID: node = new IdNode(id(n), sym(n)); break;
+			case INT: node = new IntNode(intVal(n)); break;
+			case BOOL: node = new BoolNode(boolVal(n)); break;
+			case EMPTY: node = new EmptyNode(); break;
+			default: throw new UnimplException();
+		}
+		node.setLine(line(n));
+		return node;
+	}
+
+	private List<DecNode> decs(int n, int from, int to) {
+		List<DecNode> l = new ArrayList<>();
+		for (int i = from; i < to; i++) l.add((DecNode) toAST(child(n, i)));
+		return l;
+	}
+
+	private List<Node> args(int n) {
+		List<Node> l = new ArrayList<>();
+		for (int i = 0; i < childCount(n); i++) l.add(toAST(child(n, i)));
+		return l;
+	}
+
+	// programma di prova con n funzioni che si chiamano in catena, ognuna con dichiarazioni locali e un oggetto
+	static String generate(int n) {
+		StringBuilder s = new StringBuilder("let\nclass Acc (v:int) { fun get:int () v; fun add:int (x:int) v+x; }\n");
+		for (int i = 0; i < n; i++)
+			s.append("fun f"+i+":int (a:int, b:bool) let var t:int = a*"+i+"+1000000; var o:Acc = new Acc(t); in ")
+				.append("if (b && a<=t) then { o.add(f"+Math.max(i-1, 0)+"(a-1, !b)) } else { t - "+i+" / 3 };\n");
+		return s.append("in print(f"+(n-1)+"(5, true));\n").toString();
+	}
+
+	private static long usedHeap() {
+		Runtime r = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) System.gc();
+		return r.totalMemory()-r.freeMemory();
+	}
+
+	// heap occupato, dopo symbol table e type checking, dall'AST a oggetti arricchito e dalla rappresentazione
+	// compatta con le sue entry, costruiti dallo stesso parse tree
+	// (uso: CompactAST file.fool | CompactAST -generate=N)
+	public static void main(String[] args) throws Exception {
+		CharStream chars = args[0].startsWith("-generate=") ? CharStreams.fromString(generate(Integer.parseInt(args[0].substring(10))))
+			: CharStreams.fromFileName(args[0]);
+		FOOLLexer lexer = new FOOLLexer(chars);
+		FOOLParser parser = new FOOLParser(new CommonTokenStream(lexer));
+		ParseTree st = parser.prog();
+		if (lexer.lexicalErrors+parser.getNumberOfSyntaxErrors() > 0) {
+			System.out.println("The program has syntax errors.");
+			return;
+		}
+		// ogni misura e' la differenza fra l'heap con la struttura raggiungibile e subito dopo averla rilasciata
+		ASTGenerationSTVisitor visitor = new ASTGenerationSTVisitor();
+		Node ast = visitor.visit(st);
+		new SymbolTableASTVisitor(visitor.types).visit(ast);
+		new TypeCheckEASTVisitor(visitor.types).visit(ast);
+		long objectHeap = usedHeap();
+		Reference.reachabilityFence(ast);
+		ast = null;
+		visitor = null;
+		objectHeap -= usedHeap();
+
+		FOOLlib.typeErrors = 0;
+		CompactAST arena = of(st);
+		CompactCheck check = new CompactCheck(arena);
+		check.resolve();
+		check.typeCheck();
+		int errors = check.stErrors+FOOLlib.typeErrors;
+		String summary = arena.toString();
+		long compactHeap = usedHeap();
+		Reference.reachabilityFence(check);
+		arena = null;
+		check = null;
+		compactHeap -= usedHeap();
+		System.out.println(summary);
+		System.out.println(String.format("Heap after the front end: object AST %.1f MB, compact AST %.1f MB (%.1fx); %d front-end errors.",
+			objectHeap/1e6, compactHeap/1e6, (double) objectHeap/compactHeap, errors));
+	}
+}
@@ -0,0 +1,307 @@
+package compiler;
+
+import java.util.*;
+
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+import static compiler.TypeRels.*;
+import static compiler.lib.NodeKind.*;
+
+// symbol table e type checking sulla rappresentazione compatta dell'AST (vedi CompactAST), con gli
+// stessi errori, nello stesso ordine, di SymbolTableASTVisitor e TypeCheckEASTVisitor.
+// resolve associa ad ogni uso di un identificatore (ID, CALL, NEW; per CLASS_CALL il metodo) la sua
+// STentry nell'array entry, indicizzato per nodo; typeCheck usa quelle entry. Gli offset non vengono
+// assegnati: il layout dei frame lo decide la symbol table dell'AST a oggetti del back end
+class CompactCheck {
+
+	private static final int NONE = CompactAST.NONE;
+
+	private final CompactAST ast;
+	private final Types types;
+	private final STentry[] entry;
+	private final SymbolTable symTable = new SymbolTable();
+	private final IntMap<IntMap<STentry>> classTable = new IntMap<>(); // virtual table di ogni classe, per simbolo
+	private int currentClass; // simbolo della classe di cui si stanno visitando i metodi
+	private int nestingLevel = 0;
+	int stErrors = 0;
+
+	CompactCheck(CompactAST a) {
+		ast = a;
+		types = a.types;
+		entry = new STentry[a.size()];
+	}
+
+	// SYMBOL TABLE
+
+	void resolve() { resolve(ast.root()); }
+
+	private void error(String s) {
+		System.out.println(s);
+		stErrors++;
+	}
+
+	private void resolve(int n) {
+		if (n == NONE) return;
+		int c = ast.childCount(n);
+		switch (ast.kind(n)) {
+			case PROG_LET_IN:
+				symTable.enterScope();
+				for (int i = 0; i < c; i++) resolve(ast.child(n, i));
+				symTable.exitScope();
+				break;
+			case FUN:
+				if (symTable.put(ast.sym(n), new STentry(nestingLevel, types.arrow(parTypes(n), ast.type(n)), 0)) != null)
+					error("Fun id " + ast.id(n) + " at line "+ ast.line(n) +" already declared");
+				body(n);
+				break;
+			case CLASS: resolveClass(n); break;
+			case VAR:
+				resolve(ast.child(n, 0));
+				if (symTable.put(ast.sym(n), new STentry(nestingLevel, ast.type(n), 0)) != null)
+					error("Var id " + ast.id(n) + " at line "+ ast.line(n) +" already declared");
+				break;
+			case CLASS_CALL: {
+				STentry e = symTable.lookup(ast.sym(n));
+				if (e == null) {
+					error("Var id " + ast.id(n) + " at line "+ ast.line(n) + " not declared");
+					return;
+				}
+				entry[n] = classTable.get(((RefTypeNode) e.type).classSym).get(ast.methodSym(n));
+				for (int i = 0; i < c; i++) resolve(ast.child(n, i));
+				break;
+			}
+			case NEW: {
+				STentry e = symTable.lookup(ast.sym(n), 0);
+				if (classTable.get(ast.sym(n)) == null || e == null)
+					error("Class id " + ast.id(n) + " at line "+ ast.line(n) +" not declared");
+				else entry[n] = e;
+				for (int i = 0; i < c; i++) resolve(ast.child(n, i));
+				break;
+			}
+			case CALL:
+				if ((entry[n] = symTable.lookup(ast.sym(n))) == null)
+					error("Fun id " + ast.id(n) + " at line "+ ast.line(n) + " not declared");
+				for (int i = 0; i < c; i++) resolve(ast.child(n, i));
+				break;
+			case ID:
+				if ((entry[n] = symTable.lookup(ast.sym(n))) == null)
+					error("Var or Par id " + ast.id(n) + " at line "+ ast.line(n) + " not declared");
+				break;
+			default: // PROG, espressioni
+				for (int i = 0; i < c; i++) resolve(ast.child(n, i));
+		}
+	}
+
+	private List<TypeNode> parTypes(int n) {
+		List<TypeNode> l = new ArrayList<>();
+		for (int i = 0, np = ast.leadingChildren(n, PAR); i < np; i++) l.add(ast.type(ast.child(n, i)));
+		return l;
+	}
+
+	// parametri, dichiarazioni ed exp di FUN e METHOD in un nuovo scope
+	private void body(int n) {
+		nestingLevel++;
+		symTable.enterScope();
+		int np = ast.leadingChildren(n, PAR), c = ast.childCount(n);
+		for (int i = 0; i < np; i++) {
+			int par = ast.child(n, i);
+			if (symTable.put(ast.sym(par), new STentry(nestingLevel, ast.type(par), 0)) != null)
+				error("Par id " + ast.id(par) + " at line "+ ast.line(n) +" already declared");
+		}
+		for (int i = np; i < c; i++) resolve(ast.child(n, i));
+		symTable.exitScope();
+		nestingLevel--;
+	}
+
+	private void resolveClass(int n) {
+		ArrayList<TypeNode> fields = new ArrayList<>();
+		ArrayList<MethodTypeNode> methods = new ArrayList<>();
+		if (symTable.put(ast.sym(n), new STentry(nestingLevel, new ClassTypeNode(fields, methods), 0)) != null)
+			error("Class id " + ast.id(n) + " at line "+ ast.line(n) +" already declared");
+		nestingLevel++;
+		IntMap<STentry> virtualTable = new IntMap<>();
+		classTable.put(ast.sym(n), virtualTable);
+		currentClass = ast.sym(n);
+		symTable.enterScope();
+		int nf = ast.leadingChildren(n, FIELD), c = ast.childCount(n);
+		for (int i = 0; i < nf; i++) {
+			int field = ast.child(n, i);
+			STentry fieldEntry = new STentry(nestingLevel, ast.type(field), 0);
+			virtualTable.put(ast.sym(field), fieldEntry);
+			if (symTable.put(ast.sym(field), fieldEntry) != null)
+				error("Field id " + ast.id(field) + " at line " + ast.line(n) + " already declared");
+			fields.add(ast.type(field));
+		}
+		for (int i = nf; i < c; i++) {
+			int method = ast.child(n, i);
+			if (method == NONE) continue;
+			MethodTypeNode t = types.method(types.arrow(parTypes(method), ast.type(method)));
+			STentry methodEntry = new STentry(nestingLevel, t, 0);
+			classTable.get(currentClass).put(ast.sym(method), methodEntry);
+			if (symTable.put(ast.sym(method), methodEntry) != null)
+				error("Method id " + ast.id(method) + " at line "+ ast.line(method) +" already declared");
+			body(method);
+			methods.add(t);
+		}
+		symTable.exitScope();
+		nestingLevel--;
+	}
+
+	// TYPE CHECKING
+
+	// tipo dell'espressione principale
+	TypeNode typeCheck() throws TypeException { return type(ast.root()); }
+
+	// controlla che un tipo non sia incompleto
+	private static TypeNode ck(TypeNode t) {
+		if (t == null) throw new IncomplException();
+		if (t instanceof ArrowTypeNode) {
+			for (TypeNode p : ((ArrowTypeNode) t).parlist) ck(p);
+			ck(((ArrowTypeNode) t).ret);
+		}
+		return t;
+	}
+
+	private TypeNode entryType(int n) {
+		if (entry[n] == null) throw new IncomplException();
+		return ck(entry[n].type);
+	}
+
+	// dichiarazioni dei figli [from, to) di n, ognuna con i propri errori
+	private void declarations(int n, int from, int to, String prefix) {
+		for (int i = from; i < to; i++)
+			try {
+				type(ast.child(n, i));
+			} catch (IncomplException e) {
+			} catch (TypeException e) {
+				System.out.println(prefix + e.text);
+			}
+	}
+
+	// per una espressione il suo tipo, per una dichiarazione null (vedi TypeCheckEASTVisitor)
+	private TypeNode type(int n) throws TypeException {
+		if (n == NONE) throw new IncomplException();
+		int c = ast.childCount(n), l = ast.line(n);
+		switch (ast.kind(n)) {
+			case PROG_LET_IN:
+				declarations(n, 0, c-1, "Type checking error in a declaration: ");
+				return type(ast.lastChild(n));
+			case PROG: case PRINT: return type(ast.child(n, 0));
+			case FUN: case METHOD:
+				declarations(n, ast.leadingChildren(n, PAR), c-1, "Type checking error in a declaration: ");
+				if ( !isSubtype(type(ast.lastChild(n)), ck(ast.type(n))) )
+					throw new TypeException("Wrong return type for function " + ast.id(n), l);
+				return null;
+			case VAR: {
+				TypeNode t1 = ck(ast.type(n));
+				TypeNode t2 = type(ast.child(n, 0));
+				if (t1 instanceof RefTypeNode && t2 instanceof RefTypeNode && !isSubtype(t2, t1))
+					throw new TypeException("Incompatible class for variable " + ast.id(n), l);
+				if ( !isSubtype(t2, t1) )
+					throw new TypeException("Incompatible value for variable " + ast.id(n), l);
+				return null;
+			}
+			case CLASS:
+				declarations(n, ast.leadingChildren(n, FIELD), c, "Type checking error in a declaration of a method: ");
+				return null;
+			case IF: {
+				if ( !(isSubtype(type(ast.child(n, 0)), Types.BOOL)) )
+					throw new TypeException("Non boolean condition in if", l);
+				TypeNode t = type(ast.child(n, 1));
+				TypeNode e = type(ast.child(n, 2));
+				if (isSubtype(t, e)) return e;
+				if (isSubtype(e, t)) return t;
+				throw new TypeException("Incompatible types in then-else branches", l);
+			}
+			case EQUAL: {
+				TypeNode left = type(ast.child(n, 0));
+				TypeNode right = type(ast.child(n, 1));
+				if ( !(isSubtype(left, right) || isSubtype(right, left)) )
+					throw new TypeException("Incompatible types in equal", l);
+				return Types.BOOL;
+			}
+			case TIMES: return integers(n, "Non integers in multiplication");
+			case PLUS: return integers(n, "Non integers in sum");
+			case DIV: return integers(n, "Non integers in div");
+			case MINUS: return integers(n, "Non integers in minus");
+			case NOT:
+				if ( !(isSubtype(type(ast.child(n, 0)), Types.BOOL)) )
+					throw new TypeException("Non boolean in not", l);
+				return Types.BOOL;
+			case LESS_EQUAL:
+				if ( !(isSubtype(type(ast.child(n, 0)), Types.INT)) )
+					throw new TypeException("Non integers in lesseq, type is " + type(ast.child(n, 0)), l);
+				if ( !(isSubtype(type(ast.child(n, 1)), Types.INT)) )
+					throw new TypeException("Non integers in lesseq, type is " + type(ast.child(n, 1)), l);
+				return Types.BOOL;
+			case GREATER_EQUAL: return operands(n, Types.INT, Types.BOOL, "Non integers in greq");
+			case OR: return operands(n, Types.BOOL, Types.BOOL, "Non boolean in or");
+			case AND: return operands(n, Types.BOOL, Types.BOOL, "Non boolean in and");
+			case CALL: {
+				TypeNode t = entryType(n);
+				ArrowTypeNode at;
+				if (t instanceof ArrowTypeNode) at = (ArrowTypeNode) t;
+				else if (t instanceof MethodTypeNode) at = ((MethodTypeNode) t).fun;
+				else throw new TypeException("Invocation of a non-function \""+ast.id(n)+"()\"", l);
+				if ( !(at.parlist.size() == c) )
+					throw new TypeException("Wrong number of parameters in the invocation of "+ast.id(n), l);
+				for (int i = 0; i < c; i++)
+					if ( !(isSubtype(type(ast.child(n, i)), at.parlist.get(i))) )
+						throw new TypeException("Wrong type for "+(i+1)+"-th parameter in the invocation of "+ast.id(n), l);
+				return at.ret;
+			}
+			case CLASS_CALL: {
+				TypeNode t = entryType(n);
+				String method = ast.symbols.name(ast.methodSym(n));
+				if (!(t instanceof MethodTypeNode))
+					throw new TypeException("Invocation of a non-method \""+method+"()\" on object "+ast.id(n), l);
+				ArrowTypeNode at = ((MethodTypeNode) t).fun;
+				if ( !(at.parlist.size() == c) )
+					throw new TypeException("Wrong number of parameters in the invocation of method \""+method+"()\" on object "+ast.id(n), l);
+				for (int i = 0; i < c; i++)
+					if ( !(isSubtype(type(ast.child(n, i)), at.parlist.get(i))) )
+						throw new TypeException("Wrong type for "+(i+1)+"-th parameter in the invocation of method \""+method+"()\" on object "+ast.id(n), l);
+				return at.ret;
+			}
+			case NEW: {
+				TypeNode t = entryType(n);
+				if (!(t instanceof ClassTypeNode))
+					throw new TypeException("Invocation of a non-class ID "+ast.id(n), l);
+				ClassTypeNode at = (ClassTypeNode) t;
+				if ( !(at.allFields.size() == c) )
+					throw new TypeException("Wrong number of parameters in the invocation of "+ast.id(n), l);
+				for (int i = 0; i < c; i++)
+					if ( !(isSubtype(type(ast.child(n, i)), at.allFields.get(i))) )
+						throw new TypeException("Wrong type for "+(i+1)+"-th parameter in the invocation of "+ast.id(n), l);
+				return types.ref(ast.id(n), ast.sym(n));
+			}
+			case ID: {
+				TypeNode t = entryType(n);
+				if (t instanceof ArrowTypeNode || t instanceof MethodTypeNode || t instanceof ClassTypeNode)
+					throw new TypeException("Wrong usage of function identifier " + ast.id(n), l);
+				return t;
+			}
+			case BOOL: return Types.BOOL;
+			case INT: return Types.INT;
+			case EMPTY: return Types.EMPTY;
+			default: throw new UnimplException();
+		}
+	}
+
+	// operatore aritmetico: entrambi gli operandi interi (il destro non viene controllato se il sinistro non lo e')
+	private TypeNode integers(int n, String error) throws TypeException {
+		if ( !(isSubtype(type(ast.child(n, 0)), Types.INT)
+				&& isSubtype(type(ast.child(n, 1)), Types.INT)) )
+			throw new TypeException(error, ast.line(n));
+		return Types.INT;
+	}
+
+	// operandi di tipo operand controllati uno alla volta
+	private TypeNode operands(int n, TypeNode operand, TypeNode result, String error) throws TypeException {
+		if ( !(isSubtype(type(ast.child(n, 0)), operand)) ) throw new TypeException(error, ast.line(n));
+		if ( !(isSubtype(type(ast.child(n, 1)), operand)) ) throw new TypeException(error, ast.line(n));
+		return result;
+	}
+}
@@ -0,0 +1,128 @@
+package compiler;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.antlr.v4.runtime.*;
+import compiler.lib.*;
+import svm.*;
+
+// demone di compilazione: resta in esecuzione mantenendo "calde" JVM, parser ANTLR (cache DFA) e,
+// per ogni file, lo stato di compilazione incrementale (vedi IncrementalCompiler).
+// Ogni richiesta e' una riga:
+//   compile <file>   compila il file e scrive <file>.asm
+//   run <file>       compila il file ed esegue il codice generato sulla SVM
+// e riceve come risposta i messaggi del compilatore e l'output del programma.
+// Le richieste arrivano su una socket Unix-domain (una per connessione, che viene poi chiusa)
+// oppure, con argomento "-", da standard input (ogni risposta termina con una riga ".").
+// Le connessioni sono servite in parallelo. La compilazione e' serializzata (il front-end conserva stato
+// globale in FOOLlib e scrive i messaggi su System.out), mentre i programmi vengono eseguiti fuori dal lock,
+// ciascuno entro una quota di istruzioni e di memoria: un programma che non termina non blocca le altre richieste.
+public class CompileDaemon {
+
+	private final Map<String, IncrementalCompiler> compilers = new HashMap<>();
+	private final long instructionQuota; // istruzioni eseguibili da ciascun programma
+	private final int memoryQuota;       // parole di heap e stack disponibili a ciascun programma
+
+	CompileDaemon(long instructions, int words) {
+		instructionQuota = instructions;
+		memoryQuota = words;
+	}
+
+	void serve(String request, PrintStream out) {
+		String[] req = request.trim().split("\\s+", 2);
+		long start = System.nanoTime();
+		try {
+			if (req.length < 2 || !(req[0].equals("compile") || req[0].equals("run"))) {
+				out.println("Unknown request: "+request.trim()+" (expected: compile <file> | run <file>)");
+				return;
+			}
+			SVMParser program = compile(Paths.get(req[1]).toAbsolutePath().normalize().toString(), req[0].equals("run"), out);
+			if (program != null) execute(program, out);
+		} finally {
+			out.println("Done in "+(System.nanoTime()-start)/1000000+" ms.");
+			out.flush();
+		}
+	}
+
+	// compila il file con i messaggi su out e, se assemble, assembla il codice generato;
+	// ritorna il codice assemblato, null in caso di errori o se non va eseguito
+	private synchronized SVMParser compile(String fileName, boolean assemble, PrintStream out) {
+		PrintStream stdout = System.out;
+		System.setOut(out);
+		try {
+			IncrementalCompiler compiler = compilers.computeIfAbsent(fileName, f -> new IncrementalCompiler());
+			String code = compiler.compile(CharStreams.fromFileName(fileName));
+			if (code == null) return null;
+			BufferedWriter asm = new BufferedWriter(new FileWriter(fileName+".asm"));
+			asm.write(code);
+			asm.close();
+			if (!assemble) return null;
+			SVMLexer lexerASM = new SVMLexer(CharStreams.fromString(code, fileName+".asm"));
+			SVMParser parserASM = TwoStageParse.parse(new CommonTokenStream(lexerASM), SVMParser::new, SVMParser::assembly).parser;
+			if (lexerASM.lexicalErrors+parserASM.getNumberOfSyntaxErrors() > 0) {
+				System.out.println("You had: "+lexerASM.lexicalErrors+" lexical errors and "+parserASM.getNumberOfSyntaxErrors()+" syntax errors.");
+				return null;
+			}
+			return parserASM;
+		} catch (IOException | RuntimeException e) {
+			System.out.println("Error: "+e);
+			return null;
+		} finally {
+			System.out.flush();
+			System.setOut(stdout);
+		}
+	}
+
+	// esegue il programma (fuori dal lock) con l'output direttamente su out
+	private void execute(SVMParser program, PrintStream out) {
+		ExecuteVM vm = new ExecuteVM(program.code, program.data, OutputSink.buffered(out));
+		vm.setInstructionQuota(instructionQuota);
+		vm.setMemoryQuota(memoryQuota);
+		ExecuteVM.Status status = vm.run(Long.MAX_VALUE);
+		if (status == ExecuteVM.Status.FAILED) out.println("Error: "+vm.failure());
+		else if (status != ExecuteVM.Status.HALTED) out.println("Stopped: "+status+" after "+vm.executed()+" instructions.");
+	}
+
+	// uso: CompileDaemon [socket | -] [instructionQuota [memoryQuota]]
+	public static void main(String[] args) throws Exception {
+		CompileDaemon daemon = new CompileDaemon(args.length > 1 ? Long.parseLong(args[1]) : 100000000,
+			args.length > 2 ? Integer.parseInt(args[2]) : ExecuteVM.MEMSIZE);
+		if (args.length > 0 && args[0].equals("-")) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+			PrintStream out = System.out;
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (line.isBlank()) continue;
+				daemon.serve(line, out);
+				out.println(".");
+				out.flush();
+			}
+			return;
+		}
+
+		Path socket = Paths.get(args.length > 0 ? args[0] : "fool.sock");
+		Files.deleteIfExists(socket);
+		ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		server.bind(UnixDomainSocketAddress.of(socket));
+		socket.toFile().deleteOnExit();
+		System.out.println("Listening on "+socket.toAbsolutePath());
+		ExecutorService clients = Executors.newCachedThreadPool();
+		while (true) {
+			SocketChannel client = server.accept();
+			clients.execute(() -> {
+				try (client;
+					 BufferedReader in = new BufferedReader(Channels.newReader(client, StandardCharsets.UTF_8));
+					 PrintStream out = new PrintStream(Channels.newOutputStream(client), false, StandardCharsets.UTF_8)) {
+					String request = in.readLine();
+					if (request != null) daemon.serve(request, out);
+				} catch (IOException e) {
+					// connessione chiusa dal client
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package compiler;
+
+import java.util.*;
+
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+// analisi di raggiungibilita' sull'AST arricchito: partendo dall'espressione principale segue i riferimenti
+// (entry della symbol table di IdNode, CallNode, ClassCallNode e NewNode) fino alle dichiarazioni di funzioni,
+// metodi, classi e variabili. In ogni scope raggiunto sono vive anche le variabili il cui valore iniziale puo'
+// avere effetti osservabili (stampe, chiamate, divisioni), perche' vengono comunque valutate.
+// Le dichiarazioni non raggiunte sono morte: CodeGenerationASTVisitor non ne genera il codice (vedi dead).
+// visit restituisce true se l'espressione puo' avere effetti osservabili
+public class DeadCodeEASTVisitor extends BaseEASTVisitor<Boolean,VoidException> {
+
+	private final Set<DecNode> live = new HashSet<>();
+	private final Deque<DecNode> pending = new ArrayDeque<>();
+	private boolean marking; // se true i riferimenti incontrati rendono vive le dichiarazioni
+	private int funs, deadFuns, methods, deadMethods, classes, deadClasses, vars, deadVars;
+
+	DeadCodeEASTVisitor() {}
+
+	// dichiarazioni del programma non raggiungibili dall'espressione principale
+	Set<DecNode> deadDeclarations(Node ast) {
+		if (ast instanceof ProgNode) {
+			mark(((ProgNode) ast).exp);
+			return new HashSet<>();
+		}
+		ProgLetInNode prog = (ProgLetInNode) ast;
+		reach(prog.declist, prog.exp);
+		while (!pending.isEmpty()) {
+			DecNode d = pending.pop();
+			if (d instanceof FunNode) reach(((FunNode) d).declist, ((FunNode) d).exp); // anche i metodi
+			else if (d instanceof VarNode) mark(((VarNode) d).exp);
+		}
+		Set<DecNode> dead = new HashSet<>();
+		collect(prog.declist, false, dead);
+		return dead;
+	}
+
+	// scope con dichiarazioni declist e corpo exp, raggiunto
+	private void reach(List<DecNode> declist, Node exp) {
+		for (DecNode dec : declist)
+			if (dec instanceof VarNode && visit(((VarNode) dec).exp)) use(dec);
+		mark(exp);
+	}
+
+	private void mark(Node exp) {
+		marking = true;
+		visit(exp);
+		marking = false;
+	}
+
+	private void use(STentry entry) {
+		if (marking && entry != null && entry.decl != null) use(entry.decl);
+	}
+
+	private void use(DecNode d) {
+		if (live.add(d)) pending.push(d);
+	}
+
+	// i metodi di una classe morta sono morti anche se referenziati: senza new non esistono oggetti della classe
+	private void collect(List<? extends DecNode> declist, boolean deadClass, Set<DecNode> dead) {
+		for (DecNode dec : declist) {
+			boolean isDead = deadClass || !live.contains(dec);
+			if (dec instanceof MethodNode) {
+				methods++;
+				if (isDead) deadMethods++;
+			} else if (dec instanceof FunNode) {
+				funs++;
+				if (isDead) deadFuns++;
+			} else if (dec instanceof ClassNode) {
+				classes++;
+				if (isDead) deadClasses++;
+				collect(((ClassNode) dec).methodlist, isDead, dead);
+			} else if (dec instanceof VarNode) {
+				vars++;
+				if (isDead) deadVars++;
+			} else continue;
+			if (isDead) dead.add(dec);
+			if (dec instanceof FunNode) collect(((FunNode) dec).declist, isDead, dead);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Dead code: removed "+deadFuns+" of "+funs+" functions, "+deadMethods+" of "+methods+" methods, "
+			+deadClasses+" of "+classes+" classes, "+deadVars+" of "+vars+" variables.";
+	}
+
+	private boolean any(List<Node> nodes) {
+		boolean effects = false;
+		for (Node n : nodes) effects |= visit(n);
+		return effects;
+	}
+
+	@Override
+	public Boolean visitNode(PrintNode n) {
+		visit(n.exp);
+		return true;
+	}
+
+	@Override
+	public Boolean visitNode(IfNode n) {
+		return visit(n.cond) | visit(n.th) | visit(n.el);
+	}
+
+	@Override
+	public Boolean visitNode(EqualNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(LessEqualNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(GreaterEqualNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(TimesNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(PlusNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(MinusNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(DivNode n) {
+		visit(n.left);
+		visit(n.right);
+		return true; // puo' fallire (divisione per zero)
+	}
+
+	@Override
+	public Boolean visitNode(OrNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(AndNode n) {
+		return visit(n.left) | visit(n.right);
+	}
+
+	@Override
+	public Boolean visitNode(NotNode n) {
+		return visit(n.node);
+	}
+
+	// le chiamate a un getter diventano load del campo: non rendono vivo il metodo
+	private static boolean inlined(STentry method) {
+		return method != null && method.decl instanceof MethodNode && ((MethodNode) method.decl).getter != null;
+	}
+
+	@Override
+	public Boolean visitNode(CallNode n) {
+		if (!inlined(n.entry)) use(n.entry);
+		any(n.arglist);
+		return true;
+	}
+
+	@Override
+	public Boolean visitNode(ClassCallNode n) {
+		use(n.entry);
+		if (!inlined(n.methodEntry)) use(n.methodEntry);
+		any(n.arglist);
+		return true;
+	}
+
+	@Override
+	public Boolean visitNode(NewNode n) {
+		use(n.entry);
+		return any(n.arglist);
+	}
+
+	@Override
+	public Boolean visitNode(IdNode n) {
+		use(n.entry);
+		return false;
+	}
+
+	@Override
+	public Boolean visitNode(BoolNode n) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitNode(IntNode n) {
+		return false;
+	}
+
+	@Override
+	public Boolean visitNode(EmptyNode n) {
+		return false;
+	}
+}
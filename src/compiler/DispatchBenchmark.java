@@ -0,0 +1,65 @@
+package compiler;
+
+import java.util.*;
+
+import compiler.exc.*;
+import compiler.lib.*;
+
+// confronta, per ciascuna fase a visitor, il tempo per visita con dispatch tramite switch sul tag del nodo
+// e con double dispatch tramite accept (visitor che ridefiniscono visitByAcc, vedi BaseASTVisitor).
+// I due dispatch si alternano a ogni round, in modo che entrambi vengano misurati a JIT "caldo".
+public class DispatchBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		String fileName = args.length > 0 ? args[0] : "provaClassi.fool";
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		BenchmarkFrontEnd frontEnd = BenchmarkFrontEnd.of(fileName);
+		if (frontEnd == null) return;
+		Node ast = frontEnd.ast;
+
+		// per ogni fase, la visita con dispatch tramite switch e quella con double dispatch
+		Map<String, Runnable[]> passes = new LinkedHashMap<>();
+		passes.put("symbol table", new Runnable[] {
+			() -> new SymbolTableASTVisitor(frontEnd.types).visit(ast),
+			() -> new SymbolTableASTVisitor(frontEnd.types) {
+				@Override
+				protected Void visitByAcc(Visitable v) { return v.accept(this); }
+			}.visit(ast)
+		});
+		passes.put("type checking", new Runnable[] {
+			() -> typeCheck(new TypeCheckEASTVisitor(frontEnd.types), ast),
+			() -> typeCheck(new TypeCheckEASTVisitor(frontEnd.types) {
+				@Override
+				protected TypeNode visitByAcc(Visitable v) throws TypeException { return v.accept(this); }
+			}, ast)
+		});
+		passes.put("code generation", new Runnable[] {
+			() -> { FOOLlib.resetCode(); new CodeGenerationASTVisitor().visit(ast); },
+			() -> { FOOLlib.resetCode(); new CodeGenerationASTVisitor() {
+				@Override
+				protected String visitByAcc(Visitable v) { return v.accept(this); }
+			}.visit(ast); }
+		});
+
+		for (Map.Entry<String, Runnable[]> pass : passes.entrySet()) {
+			long[] best = {Long.MAX_VALUE, Long.MAX_VALUE}; // switch, accept
+			for (int r = 0; r < rounds; r++)
+				for (int mode = 0; mode < 2; mode++) {
+					long start = System.nanoTime();
+					pass.getValue()[mode].run();
+					best[mode] = Math.min(best[mode], System.nanoTime()-start);
+				}
+			System.out.println(String.format("%-16s switch %8.3f ms   accept %8.3f ms   speedup %.2fx",
+				pass.getKey()+":", best[0]/1e6, best[1]/1e6, (double) best[1]/best[0]));
+		}
+		FOOLlib.resetCode();
+	}
+
+	private static void typeCheck(TypeCheckEASTVisitor visitor, Node ast) {
+		try {
+			visitor.visit(ast);
+		} catch (TypeException e) { // gia' escluso dal controllo iniziale
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package compiler;
+
+import java.util.*;
+
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+// analisi di escape sull'AST arricchito: una variabile inizializzata con new non sfugge al frame che la dichiara
+// se viene usata solo come oggetto su cui chiamare metodi (x.m(..)) o come operando di == (confronto di puntatori).
+// Ogni altro uso (argomento, risultato, valore di un'altra variabile o di un campo, print) puo' far sopravvivere
+// il puntatore al frame. Per le variabili che non sfuggono l'oggetto viene allocato nel frame invece che nello heap
+// (VarNode.objectWords); dopo l'analisi va rifatto il layout dei frame con SymbolTableASTVisitor
+public class EscapeEASTVisitor extends BaseEASTVisitor<Void,VoidException> {
+
+	private final List<VarNode> candidates = new ArrayList<>();
+	private final Set<DecNode> escaping = new HashSet<>();
+	private int news, allocated;
+
+	EscapeEASTVisitor() {}
+
+	// ritorna il numero di oggetti allocati nel frame
+	int analyze(Node ast) {
+		visit(ast);
+		for (VarNode v : candidates)
+			if (!escaping.contains(v)) {
+				v.objectWords = ((NewNode) v.exp).arglist.size()+1;
+				allocated++;
+			}
+		return allocated;
+	}
+
+	@Override
+	public String toString() {
+		return "Escape analysis: "+allocated+" of "+news+" new objects allocated in activation records.";
+	}
+
+	@Override
+	public Void visitNode(ProgLetInNode n) {
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ProgNode n) {
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(FunNode n) {
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(MethodNode n) {
+		return visitNode((FunNode) n);
+	}
+
+	@Override
+	public Void visitNode(ClassNode n) {
+		for (MethodNode m : n.methodlist) visit(m);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(VarNode n) {
+		if (n.exp instanceof NewNode) candidates.add(n);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IdNode n) {
+		if (n.entry != null && n.entry.decl instanceof VarNode) escaping.add(n.entry.decl);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(EqualNode n) {
+		if (!(n.left instanceof IdNode)) visit(n.left);
+		if (!(n.right instanceof IdNode)) visit(n.right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassCallNode n) { // l'oggetto diventa l'access link del metodo, che non puo' restituirlo
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(NewNode n) {
+		news++;
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(CallNode n) {
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(PrintNode n) {
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IfNode n) {
+		visit(n.cond);
+		visit(n.th);
+		visit(n.el);
+		return null;
+	}
+
+	private Void binary(Node left, Node right) {
+		visit(left);
+		visit(right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(LessEqualNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(GreaterEqualNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(TimesNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(PlusNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(MinusNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(DivNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(OrNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(AndNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(NotNode n) {
+		visit(n.node);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(BoolNode n) { return null; }
+
+	@Override
+	public Void visitNode(IntNode n) { return null; }
+
+	@Override
+	public Void visitNode(EmptyNode n) { return null; }
+}
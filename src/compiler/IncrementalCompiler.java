@@ -0,0 +1,256 @@
+package compiler;
+
+import java.io.*;
+import java.util.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.tree.*;
+import compiler.AST.*;
+import compiler.FOOLParser.*;
+import compiler.lib.*;
+import compiler.exc.*;
+import svm.*;
+
+import static compiler.lib.FOOLlib.*;
+
+// compilazione incrementale alla granularita' delle dichiarazioni top-level (cldec e dec).
+// Una dichiarazione il cui testo e' invariato, che si trova nella stessa posizione (quindi ha lo stesso offset)
+// e i cui identificatori si riferiscono a dichiarazioni top-level con la stessa firma, riusa AST arricchito,
+// esito del type checking e codice generati nella compilazione precedente; vengono rielaborate solo le
+// dichiarazioni cambiate e quelle che dipendono da firme cambiate. Lexing e parsing vengono sempre rieseguiti.
+// Si riusa solo il risultato di compilazioni senza errori; le label restano uniche perche' i contatori
+// di FOOLlib non vengono mai azzerati.
+public class IncrementalCompiler {
+
+	private static class Dec {
+		String name;
+		boolean isVar;       // una var non vede se stessa nel proprio inizializzatore
+		String text;         // testo (token non nascosti) dell'intera dichiarazione
+		String signature;    // testo della firma: senza inizializzatore e corpi di funzioni e metodi (tranne i getter)
+		Set<String> ids;     // identificatori usati nella dichiarazione
+		Set<String> sigIds;  // identificatori usati nella firma
+		String env;          // firme delle dichiarazioni top-level a cui si possono riferire gli identificatori
+		ParserRuleContext ctx;
+		boolean reused;
+		DecNode node;
+		String code;         // codice restituito dalla generazione per la dichiarazione
+		List<String> funCode; // codice di funzioni e metodi inserito con putCode
+	}
+
+	private final ASTGenerationSTVisitor astVisitor = new ASTGenerationSTVisitor(); // simboli e tipi condivisi tra compilazioni
+	private List<Dec> previous = new ArrayList<>(); // dichiarazioni dell'ultima compilazione senza errori
+	int reused, total; // dichiarazioni riusate e totali nell'ultima compilazione
+
+	// ritorna il codice generato, oppure null in caso di errori front-end
+	public String compile(CharStream chars) {
+		FOOLlib.typeErrors = 0;
+		FOOLlib.resetCode();
+		FOOLLexer lexer = new FOOLLexer(chars);
+		CommonTokenStream tokens = new CommonTokenStream(lexer);
+		TwoStageParse<FOOLParser,ProgContext> parse = TwoStageParse.parse(tokens, FOOLParser::new, FOOLParser::prog);
+		FOOLParser parser = parse.parser;
+		ProgContext st = parse.tree;
+		reused = total = 0;
+		if (lexer.lexicalErrors+parser.getNumberOfSyntaxErrors() > 0) {
+			System.out.println("You had "+lexer.lexicalErrors+" lexical errors and "+
+				parser.getNumberOfSyntaxErrors()+" syntax errors.");
+			previous = new ArrayList<>();
+			return null;
+		}
+
+		List<Dec> decs = new ArrayList<>();
+		ExpContext expCtx;
+		if (st.progbody() instanceof LetInProgContext) {
+			LetInProgContext c = (LetInProgContext) st.progbody();
+			for (CldecContext d : c.cldec()) {
+				StringBuilder sig = new StringBuilder(text(tokens, d.getStart(), d.RPAR().getSymbol()));
+				for (MethdecContext m : d.methdec()) // un metodo il cui corpo e' un identificatore puo' essere un getter, le cui
+					sig.append(' ').append(text(tokens, m.getStart(), // chiamate sono compilate come load del campo
+						getterCandidate(m) ? m.getStop() : m.RPAR().getSymbol()));
+				decs.add(describe(tokens, d, d.ID(0).getText(), false, sig.toString()));
+			}
+			for (DecContext d : c.dec())
+				if (d instanceof VardecContext) {
+					VardecContext v = (VardecContext) d;
+					decs.add(describe(tokens, v, v.ID().getText(), true, text(tokens, v.getStart(), v.type().getStop())));
+				} else {
+					FundecContext f = (FundecContext) d;
+					decs.add(describe(tokens, f, f.ID(0).getText(), false, text(tokens, f.getStart(), f.RPAR().getSymbol())));
+				}
+			expCtx = c.exp();
+		} else expCtx = ((NoDecProgContext) st.progbody()).exp();
+
+		// una dichiarazione si riusa se testo e ambiente (firme delle dichiarazioni da cui dipende) sono invariati
+		List<DecNode> declist = new ArrayList<>();
+		for (int i = 0; i < decs.size(); i++) {
+			Dec d = decs.get(i);
+			d.env = environment(decs, i);
+			Dec p = i < previous.size() ? previous.get(i) : null;
+			if (p != null && p.text.equals(d.text) && p.env.equals(d.env)) {
+				d.reused = true;
+				d.node = p.node;
+				d.code = p.code;
+				d.funCode = p.funCode;
+				reused++;
+			} else d.node = (DecNode) astVisitor.visit(d.ctx);
+			declist.add(d.node);
+		}
+		total = decs.size();
+		Node exp = astVisitor.visit(expCtx);
+		Node ast = st.progbody() instanceof LetInProgContext ? new ProgLetInNode(declist, exp) : new ProgNode(exp);
+
+		SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(astVisitor.types);
+		for (Dec d : decs) if (d.reused) symtableVisitor.declareOnly.add(d.node);
+		symtableVisitor.visit(ast);
+
+		TypeCheckEASTVisitor typeCheckVisitor = new TypeCheckEASTVisitor(astVisitor.types);
+		for (Dec d : decs)
+			if (!d.reused)
+				try {
+					typeCheckVisitor.visit(d.node);
+				} catch (IncomplException e) {
+				} catch (TypeException e) {
+					System.out.println("Type checking error in a declaration: " + e.text);
+				}
+		try {
+			typeCheckVisitor.visit(exp);
+		} catch (IncomplException e) {
+		} catch (TypeException e) {
+			System.out.println("Type checking error in main program expression: "+e.text);
+		}
+
+		int frontEndErrors = symtableVisitor.stErrors+FOOLlib.typeErrors;
+		if (frontEndErrors > 0) {
+			System.out.println("You had a total of "+frontEndErrors+" front-end errors.");
+			previous = new ArrayList<>();
+			return null;
+		}
+
+		CodeGenerationASTVisitor codeGenVisitor = new CodeGenerationASTVisitor();
+		String code;
+		if (ast instanceof ProgLetInNode) {
+			String declCode = null;
+			for (Dec d : decs) {
+				if (d.reused) for (String c : d.funCode) putCode(c);
+				else {
+					int from = codeFragments();
+					d.code = codeGenVisitor.visit(d.node);
+					d.funCode = getCodeFragments(from);
+				}
+				declCode = nlJoin(declCode, d.code);
+			}
+			code = CodeGenerationASTVisitor.progLetInCode(declCode, codeGenVisitor.visit(exp));
+		} else code = codeGenVisitor.visit(ast);
+		for (Dec d : decs) d.ctx = null; // il parse tree non serve nelle compilazioni successive
+		previous = decs;
+		return code;
+	}
+
+	private static Dec describe(CommonTokenStream tokens, ParserRuleContext ctx, String name, boolean isVar, String signature) {
+		Dec d = new Dec();
+		d.ctx = ctx;
+		d.name = name;
+		d.isVar = isVar;
+		d.text = text(tokens, ctx.getStart(), ctx.getStop());
+		d.signature = signature;
+		d.ids = new HashSet<>();
+		for (Token t : tokens.getTokens(ctx.getStart().getTokenIndex(), ctx.getStop().getTokenIndex()))
+			if (t.getType() == FOOLLexer.ID) d.ids.add(t.getText());
+		d.sigIds = new HashSet<>();
+		for (String id : signature.split(" ")) if (d.ids.contains(id)) d.sigIds.add(id);
+		return d;
+	}
+
+	private static boolean getterCandidate(MethdecContext m) {
+		Token body = m.exp().getStart();
+		return body == m.exp().getStop() && body.getType() == FOOLLexer.ID;
+	}
+
+	// testo dei token non nascosti tra from e to (inclusi), separati da spazi
+	private static String text(CommonTokenStream tokens, Token from, Token to) {
+		StringBuilder s = new StringBuilder();
+		for (Token t : tokens.getTokens(from.getTokenIndex(), to.getTokenIndex()))
+			if (t.getChannel() == Token.DEFAULT_CHANNEL) s.append(s.length()==0?"":" ").append(t.getText());
+		return s.toString();
+	}
+
+	// posizione e firma delle dichiarazioni top-level visibili dalla i-esima per ciascun identificatore che usa,
+	// chiuso rispetto agli identificatori (es. classi) usati nelle firme di tali dichiarazioni
+	private static String environment(List<Dec> decs, int i) {
+		Dec d = decs.get(i);
+		int limit = d.isVar ? i-1 : i;
+		SortedMap<String, String> env = new TreeMap<>();
+		Deque<String> work = new ArrayDeque<>(d.ids);
+		while (!work.isEmpty()) {
+			String id = work.pop();
+			if (env.containsKey(id)) continue;
+			int k = limit;
+			while (k >= 0 && !decs.get(k).name.equals(id)) k--;
+			env.put(id, k < 0 ? "" : k+":"+decs.get(k).signature);
+			if (k >= 0) work.addAll(decs.get(k).sigIds);
+		}
+		return env.toString();
+	}
+
+	// sequenze di modifiche per -check: ogni versione compilata incrementalmente deve stampare quanto compilata da zero
+	private static final String[][] EDITS = {
+		{ // il corpo del getter cambia: i chiamanti, che ne hanno la load inline, non vanno riusati
+			"let class C (f:int) { fun get:int() f; } fun g:int(c:C) c.get(); in print(g(new C(5)));",
+			"let class C (f:int) { fun get:int() 10; } fun g:int(c:C) c.get(); in print(g(new C(5)));",
+			"let class C (f:int) { fun get:int() f; } fun g:int(c:C) c.get(); in print(g(new C(5)));",
+			"let class C (f:int) { fun get:int() f; } fun g:int(c:C) c.get(); in print(g(new C(6)));"
+		},
+		{ // i campi cambiano ordine: cambia l'offset del campo letto dal getter
+			"let class C (f:int, h:int) { fun get:int() h; } fun g:int(c:C) c.get(); in print(g(new C(5, 7)));",
+			"let class C (h:int, f:int) { fun get:int() h; } fun g:int(c:C) c.get(); in print(g(new C(7, 5)));"
+		}
+	};
+
+	private static String run(String code) {
+		SVMParser parser = TwoStageParse.parse(new CommonTokenStream(new SVMLexer(CharStreams.fromString(code))),
+			SVMParser::new, SVMParser::assembly).parser;
+		OutputSink.Collector out = new OutputSink.Collector();
+		new ExecuteVM(parser.code, parser.data, out).cpu();
+		return out.text();
+	}
+
+	// verifica che la compilazione incrementale dia lo stesso output di quella da zero sulle sequenze EDITS
+	private static boolean check() {
+		boolean ok = true;
+		for (String[] versions : EDITS) {
+			IncrementalCompiler compiler = new IncrementalCompiler();
+			for (String source : versions) {
+				String incremental = run(compiler.compile(CharStreams.fromString(source)));
+				String fresh = run(new IncrementalCompiler().compile(CharStreams.fromString(source)));
+				boolean same = incremental.equals(fresh);
+				System.out.println((same ? "ok" : "FAILED")+" (reused "+compiler.reused+"/"+compiler.total+"): "+source);
+				if (!same) System.out.println("  incremental: "+incremental.trim()+", fresh: "+fresh.trim());
+				ok &= same;
+			}
+		}
+		return ok;
+	}
+
+	// ricompila il file ogni volta che viene modificato (-check: esegue le sequenze EDITS)
+	public static void main(String[] args) throws Exception {
+		if (args.length > 0 && args[0].equals("-check")) System.exit(check() ? 0 : 1);
+		String fileName = args.length > 0 ? args[0] : "provaClassi.fool";
+		IncrementalCompiler compiler = new IncrementalCompiler();
+		File file = new File(fileName);
+		long lastModified = -1;
+		while (true) {
+			if (file.lastModified() != lastModified) {
+				lastModified = file.lastModified();
+				long start = System.nanoTime();
+				String code = compiler.compile(CharStreams.fromFileName(fileName));
+				if (code != null) {
+					BufferedWriter out = new BufferedWriter(new FileWriter(fileName+".asm"));
+					out.write(code);
+					out.close();
+				}
+				System.out.println((code != null ? "Compiled " : "Failed to compile ")+fileName+" in "+
+					(System.nanoTime()-start)/1000000+" ms, reusing "+compiler.reused+" of "+compiler.total+" declarations.\n");
+			}
+			Thread.sleep(200);
+		}
+	}
+}
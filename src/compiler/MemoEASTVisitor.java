@@ -0,0 +1,204 @@
+package compiler;
+
+import java.util.*;
+
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+// analisi di purezza sull'AST arricchito, per la memoizzazione: una funzione e' pura se il suo corpo (con le
+// dichiarazioni locali) non stampa, non crea oggetti, non chiama metodi e chiama solo funzioni pure. In FOOL le
+// variabili non vengono riassegnate, per cui il risultato di una funzione pura dipende solo dagli argomenti.
+// Le funzioni di primo livello pure, ricorsive (per le altre la ricerca nella tabella costa piu' del calcolo)
+// e con parametri e risultato int o bool vengono memoizzate: FunNode.memo e' l'indice della loro tabella
+// nella SVM (istruzioni mget e mput, vedi CodeGenerationASTVisitor)
+public class MemoEASTVisitor extends BaseEASTVisitor<Void,VoidException> {
+
+	private final Map<FunNode, Set<FunNode>> callees = new HashMap<>(); // funzioni chiamate direttamente
+	private final Set<FunNode> impure = new HashSet<>();
+	private FunNode current; // funzione di cui si visita il corpo (null: espressione principale o metodo)
+	private int functions, memoized;
+
+	MemoEASTVisitor() {}
+
+	// ritorna il numero di funzioni memoizzate
+	int analyze(Node ast) {
+		visit(ast);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (Map.Entry<FunNode, Set<FunNode>> e : callees.entrySet())
+				if (!impure.contains(e.getKey()) && !Collections.disjoint(e.getValue(), impure)) changed |= impure.add(e.getKey());
+		}
+		if (!(ast instanceof ProgLetInNode)) return 0;
+		for (DecNode dec : ((ProgLetInNode) ast).declist)
+			if (dec instanceof FunNode) {
+				FunNode f = (FunNode) dec;
+				functions++;
+				if (!f.parlist.isEmpty() && basic(f.retType) && f.parlist.stream().allMatch(p -> basic(p.getType()))
+						&& !impure.contains(f) && recursive(f)) f.memo = memoized++;
+			}
+		return memoized;
+	}
+
+	private static boolean basic(TypeNode t) {
+		return t == Types.INT || t == Types.BOOL;
+	}
+
+	// f si chiama, direttamente o tramite altre funzioni
+	private boolean recursive(FunNode f) {
+		Set<FunNode> seen = new HashSet<>();
+		Deque<FunNode> pending = new ArrayDeque<>(callees.get(f));
+		while (!pending.isEmpty()) {
+			FunNode g = pending.pop();
+			if (g == f) return true;
+			if (seen.add(g)) pending.addAll(callees.getOrDefault(g, Collections.emptySet()));
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return "Memoization: "+memoized+" of "+functions+" top-level functions memoized.";
+	}
+
+	private void effect() {
+		if (current != null) impure.add(current);
+	}
+
+	@Override
+	public Void visitNode(ProgLetInNode n) {
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ProgNode n) {
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(FunNode n) {
+		FunNode outer = current;
+		current = n;
+		n.memo = -1;
+		callees.put(n, new HashSet<>());
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		current = outer;
+		return null;
+	}
+
+	@Override
+	public Void visitNode(MethodNode n) { // i metodi non vengono memoizzati: chiamarli e' un effetto
+		FunNode outer = current;
+		current = null;
+		for (Node dec : n.declist) visit(dec);
+		visit(n.exp);
+		current = outer;
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassNode n) {
+		for (MethodNode m : n.methodlist) visit(m);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(VarNode n) {
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(PrintNode n) {
+		effect();
+		visit(n.exp);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(NewNode n) {
+		effect();
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(ClassCallNode n) {
+		effect();
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(CallNode n) {
+		if (n.entry != null && n.entry.decl instanceof FunNode && !(n.entry.decl instanceof MethodNode)) {
+			if (current != null) callees.get(current).add((FunNode) n.entry.decl);
+		} else effect();
+		for (Node arg : n.arglist) visit(arg);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IfNode n) {
+		visit(n.cond);
+		visit(n.th);
+		visit(n.el);
+		return null;
+	}
+
+	private Void binary(Node left, Node right) {
+		visit(left);
+		visit(right);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(EqualNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(LessEqualNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(GreaterEqualNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(TimesNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(PlusNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(MinusNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(DivNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(OrNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(AndNode n) { return binary(n.left, n.right); }
+
+	@Override
+	public Void visitNode(NotNode n) {
+		visit(n.node);
+		return null;
+	}
+
+	@Override
+	public Void visitNode(IdNode n) { return null; }
+
+	@Override
+	public Void visitNode(BoolNode n) { return null; }
+
+	@Override
+	public Void visitNode(IntNode n) { return null; }
+
+	@Override
+	public Void visitNode(EmptyNode n) { return null; }
+}
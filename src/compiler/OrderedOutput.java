@@ -0,0 +1,55 @@
+package compiler;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+// output di un'analisi in cui alcune parti vengono eseguite in parallelo su un ForkJoinPool: i messaggi
+// della parte sequenziale (out) e quelli di ciascun task sono raccolti in buffer separati e stampati da join
+// nell'ordine in cui i task sono stati creati, cioe' nello stesso ordine dell'analisi tutta sequenziale
+final class OrderedOutput {
+
+	private final ForkJoinPool pool;
+	private final List<Object> parts = new ArrayList<>(); // ByteArrayOutputStream o ForkJoinTask<ByteArrayOutputStream>
+	PrintStream out; // messaggi della parte sequenziale, fino al prossimo fork
+
+	OrderedOutput(ForkJoinPool p) {
+		pool = p;
+		next();
+	}
+
+	private void next() {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		parts.add(buffer);
+		out = new PrintStream(buffer, true);
+	}
+
+	// esegue task in parallelo, con i suoi messaggi su uno stream proprio; out passa a un nuovo buffer
+	void fork(Consumer<PrintStream> task) {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		parts.add(pool.submit(() -> {
+			PrintStream s = new PrintStream(buffer, true);
+			task.accept(s);
+			return buffer;
+		}));
+		next();
+	}
+
+	int tasks() {
+		return parts.size()/2;
+	}
+
+	// attende tutti i task (rilanciando le loro eccezioni) e stampa i messaggi su target
+	@SuppressWarnings("unchecked")
+	void join(PrintStream target) {
+		for (Object part : parts) {
+			ByteArrayOutputStream buffer = part instanceof ByteArrayOutputStream ? (ByteArrayOutputStream) part
+				: ((ForkJoinTask<ByteArrayOutputStream>) part).join();
+			target.print(buffer.toString());
+		}
+		target.flush();
+		parts.clear();
+		next();
+	}
+}
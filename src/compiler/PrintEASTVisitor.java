@@ -1,18 +1,90 @@
 package compiler;
 
+import java.io.*;
+import java.util.*;
+
 import compiler.AST.*;
 import compiler.lib.*;
 import compiler.exc.*;
 
+import static compiler.lib.FOOLlib.*;
+
+// dump dell'AST (arricchito) attraverso un TreeDump, con limiti di profondita' e di nodi visitati
+// e, opzionalmente, solo per alcune dichiarazioni top-level (escludendo l'espressione principale)
 public class PrintEASTVisitor extends BaseEASTVisitor<Void,VoidException> {
 
-	PrintEASTVisitor() { super(false,true); } 
+	private final TreeDump out;
+	private final int maxDepth, maxNodes;
+	private final Set<String> only; // id delle dichiarazioni top-level da visualizzare (null: tutte)
+	private int depth = -1, nodes = 0, omitted = 0;
+	private String mark = "";
+
+	PrintEASTVisitor() {
+		this(TreeDump.of("text", new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1<<16))),
+			Integer.MAX_VALUE, Integer.MAX_VALUE, null);
+	}
+
+	PrintEASTVisitor(TreeDump d, int maxDepth, int maxNodes, Set<String> only) {
+		super(false);
+		out = d;
+		this.maxDepth = maxDepth;
+		this.maxNodes = maxNodes;
+		this.only = only;
+	}
+
+	// visita v e completa il dump, svuotandone il buffer
+	void dump(Visitable v) {
+		visit(v);
+		out.finish(omitted);
+	}
+
+	@Override
+	public Void visit(Visitable v, String m) {
+		if (v == null) return null;
+		if (depth+1 > maxDepth || nodes >= maxNodes) {
+			omitted++;
+			return null;
+		}
+		nodes++;
+		depth++;
+		String prevMark = mark;
+		mark = m;
+		try {
+			return visitByAcc(v);
+		} finally {
+			depth--;
+			mark = prevMark;
+		}
+	}
+
+	@Override
+	protected void printNode(Node n) {
+		out.node(depth, mark, extractNodeName(n.getClass().getName()), null);
+	}
+
+	@Override
+	protected void printNode(Node n, String s) {
+		out.node(depth, mark, extractNodeName(n.getClass().getName()), s);
+	}
+
+	@Override
+	protected void printSTentry(String s) {
+		out.node(depth, "", "STentry", s);
+	}
+
+	private static String decId(Node dec) {
+		if (dec instanceof FunNode) return ((FunNode) dec).id;
+		if (dec instanceof VarNode) return ((VarNode) dec).id;
+		if (dec instanceof ClassNode) return ((ClassNode) dec).id;
+		return null;
+	}
 
 	@Override
 	public Void visitNode(ProgLetInNode n) {
 		printNode(n);
-		for (Node dec : n.declist) visit(dec);
-		visit(n.exp);
+		for (Node dec : n.declist)
+			if (only == null || only.contains(decId(dec))) visit(dec);
+		if (only == null) visit(n.exp);
 		return null;
 	}
 
@@ -105,13 +177,13 @@ public class PrintEASTVisitor extends BaseEASTVisitor<Void,VoidException> {
 
 	@Override
 	public Void visitNode(BoolNode n) {
-		printNode(n,n.val.toString());
+		printNode(n,String.valueOf(n.val));
 		return null;
 	}
 
 	@Override
 	public Void visitNode(IntNode n) {
-		printNode(n,n.val.toString());
+		printNode(n,String.valueOf(n.val));
 		return null;
 	}
 	
@@ -0,0 +1,391 @@
+package compiler;
+
+import java.util.*;
+
+import compiler.AST.*;
+import compiler.exc.*;
+import compiler.lib.*;
+
+import static svm.RegisterVM.*;
+
+// generazione di codice per la macchina a registri (svm.RegisterVM): visit di un'espressione emette il codice
+// che ne calcola il valore e ritorna il registro che lo contiene. Parametri e dichiarazioni del frame corrente
+// sono gia' registri (gli offset delle loro entry), quindi leggerli non richiede istruzioni; i temporanei sono
+// allocati a pila sotto le dichiarazioni. Ogni funzione viene emessa in un proprio blocco di codice:
+// alla fine i blocchi vengono concatenati in un unico int[] e gli indirizzi delle label vengono risolti
+public class RegisterCodeGenerationASTVisitor extends BaseASTVisitor<Integer,VoidException> {
+
+	// dichiarazioni morte (vedi DeadCodeEASTVisitor), per cui non viene generato codice
+	final Set<DecNode> dead = new HashSet<>();
+
+	private static class Chunk {
+		int[] words = new int[64];
+		int size = 0;
+	}
+
+	private final List<Chunk> chunks = new ArrayList<>();
+	private Chunk cur;
+	private final Map<DecNode,Integer> funLabels = new HashMap<>();
+	private final List<Chunk> labelChunk = new ArrayList<>(); // blocco e posizione di ciascuna label
+	private final List<Integer> labelPos = new ArrayList<>();
+	private final List<Chunk> fixupChunk = new ArrayList<>(); // operandi da sostituire con l'indirizzo di una label
+	private final List<Integer> fixupPos = new ArrayList<>(), fixupLabel = new ArrayList<>();
+
+	private int top;      // prossimo registro temporaneo libero del frame corrente
+	private int temps;    // primo registro temporaneo del frame corrente
+	private int low;      // registro piu' basso usato nel frame corrente
+	private int declSlot; // registro della prossima dichiarazione visitata
+	private int lastDest = -1; // posizione in cur dell'operando destinazione dell'ultima istruzione
+
+	RegisterCodeGenerationASTVisitor() {}
+
+	// codice della macchina a registri del programma
+	int[] generate(Node ast) {
+		cur = new Chunk();
+		chunks.add(cur);
+		visit(ast);
+		int size = 0;
+		Map<Chunk,Integer> base = new HashMap<>();
+		for (Chunk c : chunks) {
+			base.put(c, size);
+			size += c.size;
+		}
+		int[] code = new int[size];
+		for (Chunk c : chunks) System.arraycopy(c.words, 0, code, base.get(c), c.size);
+		for (int i = 0; i < fixupPos.size(); i++) {
+			int l = fixupLabel.get(i);
+			code[base.get(fixupChunk.get(i))+fixupPos.get(i)] = base.get(labelChunk.get(l))+labelPos.get(l);
+		}
+		return code;
+	}
+
+	private void emit(int... words) {
+		if (cur.size+words.length > cur.words.length) cur.words = Arrays.copyOf(cur.words, 2*(cur.size+words.length));
+		int op = words[0];
+		lastDest = op == JMP || op == JF || op == RET || op == ENTER || op == SHW || op == PRINT || op == HALT ? -1 : cur.size+1;
+		System.arraycopy(words, 0, cur.words, cur.size, words.length);
+		cur.size += words.length;
+	}
+
+	private int newLabel() {
+		labelChunk.add(null);
+		labelPos.add(-1);
+		return labelPos.size()-1;
+	}
+
+	private void bind(int label) {
+		labelChunk.set(label, cur);
+		labelPos.set(label, cur.size);
+		lastDest = -1; // il valore puo' arrivare da piu' percorsi
+	}
+
+	// l'operando in posizione offset dell'ultima istruzione emessa e' l'indirizzo di label
+	private void fixup(int offset, int label) {
+		fixupChunk.add(cur);
+		fixupPos.add(cur.size-offset);
+		fixupLabel.add(label);
+	}
+
+	private int funLabel(DecNode f) {
+		return funLabels.computeIfAbsent(f, k -> newLabel());
+	}
+
+	private int alloc() {
+		int r = top--;
+		if (r < low) low = r;
+		return r;
+	}
+
+	// genera exp con il risultato nel registro d
+	private void into(Node exp, int d) {
+		int r = visit(exp);
+		if (r == d) return;
+		if (lastDest >= 0 && r <= temps && cur.words[lastDest] == r) cur.words[lastDest] = d; // temporaneo appena scritto
+		else emit(MOV, d, r);
+	}
+
+	// argomenti in registri consecutivi (a partire dal registro ritornato, verso il basso), valutati
+	// dall'ultimo al primo se reverse (come nella SVM, che li mette sullo stack in quest'ordine)
+	private int args(List<Node> arglist, boolean reverse) {
+		int a = top;
+		for (int i = 0; i < arglist.size(); i++) alloc();
+		for (int j = 0; j < arglist.size(); j++) {
+			int i = reverse ? arglist.size()-1-j : j;
+			int mark = top;
+			into(arglist.get(i), a-i);
+			top = mark;
+		}
+		return a;
+	}
+
+	// registro con il valore della dichiarazione di entry, vista al nesting level nl
+	private int load(STentry entry, int nl) {
+		if (nl == entry.nl) return entry.offset;
+		int t = alloc();
+		if (entry.nl == 0) emit(LDG, t, entry.offset);
+		else emit(LUP, t, nl-entry.nl, entry.offset);
+		return t;
+	}
+
+
+	// corpo (dichiarazioni ed espressione) di un frame; ritorna il registro del risultato
+	// (le parole riservate dalla symbol table per gli oggetti allocati nel frame restano inutilizzate:
+	// questa macchina alloca sempre gli oggetti nello heap)
+	private int body(List<DecNode> declist, Node exp) {
+		int words = 0;
+		for (DecNode dec : declist) words += frameWords(dec);
+		top = temps = -2-words;
+		low = -1;
+		declSlot = -2;
+		for (DecNode dec : declist) {
+			visit(dec);
+			declSlot -= frameWords(dec);
+		}
+		return visit(exp);
+	}
+
+	private static int frameWords(DecNode dec) {
+		return dec instanceof VarNode ? 1+((VarNode) dec).objectWords : 1;
+	}
+
+	private void function(FunNode n, int label) {
+		Chunk saved = cur;
+		int savedTop = top, savedTemps = temps, savedLow = low, savedSlot = declSlot;
+		cur = new Chunk();
+		chunks.add(cur);
+		bind(label);
+		emit(ENTER, 0);
+		int r = body(n.declist, n.exp);
+		emit(RET, r, n.parlist.size());
+		cur.words[1] = -low;
+		cur = saved;
+		top = savedTop;
+		temps = savedTemps;
+		low = savedLow;
+		declSlot = savedSlot;
+		lastDest = -1;
+	}
+
+	@Override
+	public Integer visitNode(ProgLetInNode n) {
+		emit(ENTER, 0);
+		int r = body(n.declist, n.exp);
+		emit(HALT);
+		chunks.get(0).words[1] = -low;
+		return r;
+	}
+
+	@Override
+	public Integer visitNode(ProgNode n) {
+		return visitNode(new ProgLetInNode(Collections.emptyList(), n.exp));
+	}
+
+	@Override
+	public Integer visitNode(FunNode n) {
+		if (!dead.contains(n)) function(n, funLabel(n));
+		return null;
+	}
+
+	@Override
+	public Integer visitNode(VarNode n) {
+		if (!dead.contains(n)) {
+			int slot = declSlot;
+			into(n.exp, slot);
+			top = temps;
+		}
+		return null;
+	}
+
+	@Override
+	public Integer visitNode(ClassNode n) {
+		if (dead.contains(n)) return null;
+		int slot = declSlot;
+		List<Integer> table = new ArrayList<>();
+		for (MethodNode method : n.methodlist) {
+			if (dead.contains(method)) continue;
+			while (table.size() <= method.offset) table.add(null);
+			table.set(method.offset, funLabel(method));
+			function(method, funLabel(method));
+		}
+		emit(LHP, slot);
+		for (Integer label : table) {
+			emit(SHW, 0);
+			if (label != null) fixup(1, label);
+		}
+		return null;
+	}
+
+	@Override
+	public Integer visitNode(PrintNode n) {
+		int r = visit(n.exp);
+		emit(PRINT, r);
+		return r;
+	}
+
+	@Override
+	public Integer visitNode(IfNode n) {
+		int mark = top;
+		int c = visit(n.cond);
+		top = mark;
+		int d = alloc();
+		int lElse = newLabel(), lEnd = newLabel();
+		emit(JF, c, 0);
+		fixup(1, lElse);
+		into(n.th, d);
+		top = mark-1;
+		emit(JMP, 0);
+		fixup(1, lEnd);
+		bind(lElse);
+		into(n.el, d);
+		top = mark-1;
+		bind(lEnd);
+		return d;
+	}
+
+	private int binary(int op, Node left, Node right) {
+		int mark = top;
+		int a = visit(left);
+		int b = visit(right);
+		top = mark;
+		int d = alloc();
+		emit(op, d, a, b);
+		return d;
+	}
+
+	@Override
+	public Integer visitNode(EqualNode n) { return binary(EQ, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(LessEqualNode n) { return binary(LE, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(GreaterEqualNode n) {
+		int mark = top;
+		int a = visit(n.left);
+		int b = visit(n.right);
+		top = mark;
+		int d = alloc();
+		emit(LE, d, b, a);
+		return d;
+	}
+
+	@Override
+	public Integer visitNode(PlusNode n) { return binary(ADD, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(MinusNode n) { return binary(SUB, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(TimesNode n) { return binary(MUL, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(DivNode n) { return binary(DIV, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(AndNode n) { return binary(MUL, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(OrNode n) { return binary(OR, n.left, n.right); }
+
+	@Override
+	public Integer visitNode(NotNode n) {
+		int mark = top;
+		int a = visit(n.node);
+		top = mark;
+		int d = alloc();
+		emit(NOT, d, a);
+		return d;
+	}
+
+	// campo restituito dal metodo di entry, se e' un getter
+	private static STentry getter(STentry method) {
+		return method.decl instanceof MethodNode ? ((MethodNode) method.decl).getter : null;
+	}
+
+	@Override
+	public Integer visitNode(CallNode n) {
+		STentry field = getter(n.entry);
+		if (field != null) {
+			int d = alloc();
+			emit(LUP, d, n.nl-n.entry.nl, field.offset);
+			return d;
+		}
+		int mark = top;
+		int a = args(n.arglist, true);
+		if (n.entry.type instanceof MethodTypeNode) { // metodo della stessa classe: l'access link e' l'oggetto
+			int obj = alloc();
+			emit(LINK, obj, n.nl-n.entry.nl);
+			int t = alloc();
+			emit(LOAD, t, obj, 0);
+			emit(LOAD, t, t, n.entry.offset);
+			top = mark;
+			int d = alloc();
+			emit(CALLI, d, t, obj, a, n.arglist.size());
+			return d;
+		}
+		top = mark;
+		int d = alloc();
+		emit(CALL, d, 0, n.entry.nl == 0 ? -1 : n.nl-n.entry.nl, a, n.arglist.size());
+		fixup(4, funLabel(n.entry.decl));
+		return d;
+	}
+
+	@Override
+	public Integer visitNode(ClassCallNode n) {
+		int mark = top;
+		STentry field = getter(n.methodEntry);
+		if (field != null) {
+			int obj = load(n.entry, n.nl);
+			top = mark;
+			int d = alloc();
+			emit(LOAD, d, obj, field.offset);
+			return d;
+		}
+		int a = args(n.arglist, true);
+		int obj = load(n.entry, n.nl);
+		int t = alloc();
+		emit(LOAD, t, obj, 0);
+		emit(LOAD, t, t, n.methodEntry.offset);
+		top = mark;
+		int d = alloc();
+		emit(CALLI, d, t, obj, a, n.arglist.size());
+		return d;
+	}
+
+	@Override
+	public Integer visitNode(NewNode n) {
+		int mark = top;
+		int a = args(n.arglist, false);
+		int dt = load(n.entry, n.nl);
+		top = mark;
+		int d = alloc();
+		emit(NEW, d, dt, a, n.arglist.size());
+		return d;
+	}
+
+	@Override
+	public Integer visitNode(IdNode n) {
+		return load(n.entry, n.nl);
+	}
+
+	@Override
+	public Integer visitNode(BoolNode n) {
+		int d = alloc();
+		emit(CONST, d, n.val ? 1 : 0);
+		return d;
+	}
+
+	@Override
+	public Integer visitNode(IntNode n) {
+		int d = alloc();
+		emit(CONST, d, n.val);
+		return d;
+	}
+
+	@Override
+	public Integer visitNode(EmptyNode n) {
+		int d = alloc();
+		emit(CONST, d, -1);
+		return d;
+	}
+}
@@ -6,7 +6,9 @@ public class STentry implements Visitable {
 	final int nl;
 	final TypeNode type;
 	final int offset;
-	public STentry(int n, TypeNode t, int o) { nl = n; type = t; offset=o; }
+	final DecNode decl; // dichiarazione di funzione, metodo, classe o variabile (null per parametri e campi)
+	public STentry(int n, TypeNode t, int o) { this(n, t, o, null); }
+	public STentry(int n, TypeNode t, int o, DecNode d) { nl = n; type = t; offset=o; decl = d; }
 
 	@Override
 	public <S,E extends Exception> S accept(BaseASTVisitor<S,E> visitor) throws E {
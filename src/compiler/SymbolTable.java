@@ -0,0 +1,74 @@
+package compiler;
+
+import java.util.*;
+
+// symbol table a scope annidati con lookup in tempo costante:
+// un array indicizzato per simbolo (vedi Interner) con la pila dei binding di ogni identificatore
+// (il primo e' il piu' interno) e un undo log dei simboli inseriti, usato per ripristinare
+// i binding all'uscita dallo scope
+class SymbolTable {
+
+	private static class Binding {
+		final STentry entry;
+		final int nl;            // nesting level dello scope che contiene il binding
+		final Binding shadowed;  // binding nascosto da questo (scope piu' esterno)
+		Binding(STentry e, int n, Binding s) { entry = e; nl = n; shadowed = s; }
+	}
+
+	private Binding[] bindings = new Binding[64];
+	private int[] undoLog = new int[64];
+	private int undoSize = 0;
+	private int[] scopeStart = new int[8]; // posizione nell'undo log da cui iniziano gli inserimenti di ogni scope
+	private int level = -1; // nesting level dello scope corrente
+
+	void enterScope() {
+		level++;
+		if (level == scopeStart.length) scopeStart = Arrays.copyOf(scopeStart, level*2);
+		scopeStart[level] = undoSize;
+	}
+
+	void exitScope() {
+		while (undoSize > scopeStart[level]) {
+			int sym = undoLog[--undoSize];
+			bindings[sym] = bindings[sym].shadowed;
+		}
+		level--;
+	}
+
+	// inserisce sym nello scope corrente; ritorna la entry che sym aveva gia' in questo scope (null se non c'era)
+	STentry put(int sym, STentry entry) {
+		if (sym >= bindings.length) bindings = Arrays.copyOf(bindings, Math.max(sym+1, bindings.length*2));
+		Binding b = bindings[sym];
+		if (b != null && b.nl == level) {
+			bindings[sym] = new Binding(entry, level, b.shadowed);
+			return b.entry;
+		}
+		bindings[sym] = new Binding(entry, level, b);
+		if (undoSize == undoLog.length) undoLog = Arrays.copyOf(undoLog, undoSize*2);
+		undoLog[undoSize++] = sym;
+		return null;
+	}
+
+	// copia con gli stessi binding visibili, da cui si puo' proseguire indipendentemente (i binding sono immutabili);
+	// gli scope gia' aperti non vanno chiusi nella copia
+	SymbolTable copy() {
+		SymbolTable t = new SymbolTable();
+		t.bindings = bindings.clone();
+		t.level = level;
+		t.scopeStart = new int[Math.max(8, level+2)];
+		return t;
+	}
+
+	// binding piu' interno di sym
+	STentry lookup(int sym) {
+		Binding b = sym < bindings.length ? bindings[sym] : null;
+		return b == null ? null : b.entry;
+	}
+
+	// binding di sym nello scope di nesting level nl
+	STentry lookup(int sym, int nl) {
+		Binding b = sym < bindings.length ? bindings[sym] : null;
+		while (b != null && b.nl > nl) b = b.shadowed;
+		return (b != null && b.nl == nl) ? b.entry : null;
+	}
+}
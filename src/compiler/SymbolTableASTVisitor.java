@@ -1,6 +1,8 @@
 package compiler;
 
+import java.io.PrintStream;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import compiler.AST.*;
@@ -9,32 +11,86 @@ import compiler.lib.*;
 
 public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	
-	private List<Map<String, STentry>> symTable = new ArrayList<>();
-	private Map<String, Map<String, STentry>> classTable = new HashMap<>();
+	private SymbolTable symTable = new SymbolTable();
+	private IntMap<IntMap<STentry>> classTable = new IntMap<>(); // virtual table di ogni classe, per simbolo
+	private int currentClass; // simbolo della classe di cui si stanno visitando i metodi
 	private int nestingLevel=0; // current nesting level
 	private int decOffset=-2; // counter for offset of local declarations at current nesting level 
 	int stErrors=0;
+	// dichiarazioni di cui inserire solo la firma, senza visitarne il corpo (compilazione incrementale)
+	final Set<DecNode> declareOnly = new HashSet<>();
+	boolean inlineGetters = true; // riconosce i metodi getter (vedi MethodNode.getter)
+	private PrintStream out = System.out; // messaggi d'errore
+	// visitParallel: corpi delle funzioni e dei metodi di primo livello risolti in parallelo da copie del visitor
+	private OrderedOutput parallel;
+	private final List<SymbolTableASTVisitor> forks = new ArrayList<>();
 
-	SymbolTableASTVisitor() {}
-	SymbolTableASTVisitor(boolean debug) {super(debug);} // enables print for debugging
+	private final Types types;
 
-	private STentry stLookup(String id) {
-		int j = nestingLevel;
-		STentry entry = null;
-		while (j >= 0 && entry == null) 
-			entry = symTable.get(j--).get(id);	
-		return entry;
+	SymbolTableASTVisitor(Types t) {types = t;}
+	SymbolTableASTVisitor(Types t, boolean debug) {super(debug); types = t;} // enables print for debugging
+
+	private STentry stLookup(int sym) {
+		return symTable.lookup(sym);
+	}
+
+	// come visit, ma in due fasi: le dichiarazioni (firme, entry, offset, inizializzazioni globali) vengono
+	// visitate in sequenza, i corpi delle funzioni e dei metodi di primo livello in parallelo su pool, ognuno da
+	// una copia del visitor con la symbol table visibile in quel punto. Entry, annotazioni dell'AST ed errori
+	// (anche l'ordine dei messaggi) sono gli stessi della visita sequenziale
+	void visitParallel(Node ast, ForkJoinPool pool) {
+		if (print) { // la stampa dei nodi non e' ordinabile
+			visit(ast);
+			return;
+		}
+		parallel = new OrderedOutput(pool);
+		out = parallel.out;
+		try {
+			visit(ast);
+			parallel.join(System.out);
+		} finally {
+			out = System.out;
+			parallel = null;
+		}
+		for (SymbolTableASTVisitor f : forks) stErrors += f.stErrors;
+		forks.clear();
+	}
+
+	// visitor che prosegue indipendentemente dallo stato corrente (usato solo dopo il join)
+	private SymbolTableASTVisitor fork() {
+		SymbolTableASTVisitor f = new SymbolTableASTVisitor(types);
+		f.symTable = symTable.copy();
+		f.classTable = classTable.copy();
+		IntMap<STentry> virtualTable = classTable.get(currentClass);
+		if (virtualTable != null) f.classTable.put(currentClass, virtualTable.copy());
+		f.currentClass = currentClass;
+		f.nestingLevel = nestingLevel;
+		f.decOffset = decOffset;
+		f.declareOnly.addAll(declareOnly);
+		f.inlineGetters = inlineGetters;
+		forks.add(f);
+		return f;
+	}
+
+	// in visitParallel, rimanda la visita del corpo body a un task; ritorna false se va visitato subito
+	private boolean deferred(Runnable body, SymbolTableASTVisitor f) {
+		if (f == null) return false;
+		parallel.fork(s -> {
+			f.out = s;
+			body.run();
+		});
+		out = parallel.out;
+		return true;
 	}
 
 	@Override
 	public Void visitNode(ProgLetInNode n) {
 		if (print) printNode(n);
-		Map<String, STentry> hm = new HashMap<>();
-		symTable.add(hm);
+		symTable.enterScope();
 		// visito le dichiarazioni (comprese le classi)
 	    for (Node dec : n.declist) visit(dec);
 		visit(n.exp);
-		symTable.remove(0);
+		symTable.exitScope();
 		return null;
 	}
 
@@ -48,40 +104,44 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	@Override
 	public Void visitNode(FunNode n) {
 		if (print) printNode(n);
-		Map<String, STentry> hm = symTable.get(nestingLevel);
 		List<TypeNode> parTypes = new ArrayList<>();  
 		for (ParNode par : n.parlist) parTypes.add(par.getType()); 
-		STentry entry = new STentry(nestingLevel, new ArrowTypeNode(parTypes,n.retType),decOffset--);
+		STentry entry = new STentry(nestingLevel, types.arrow(parTypes,n.retType),decOffset--,n);
 		//inserimento di ID nella symtable
-		if (hm.put(n.id, entry) != null) {
-			System.out.println("Fun id " + n.id + " at line "+ n.getLine() +" already declared");
+		if (symTable.put(n.sym, entry) != null) {
+			out.println("Fun id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
 		}
-		//creare una nuova hashmap per la symTable
+		if (declareOnly.contains(n)) return null;
+		SymbolTableASTVisitor f = parallel != null && nestingLevel == 0 ? fork() : null;
+		if (!deferred(() -> f.bodyOf(n), f)) bodyOf(n);
+		return null;
+	}
+
+	private void bodyOf(FunNode n) {
+		//creare un nuovo scope nella symTable
 		nestingLevel++;
-		Map<String, STentry> hmn = new HashMap<>();
-		symTable.add(hmn);
+		symTable.enterScope();
 		int prevNLDecOffset=decOffset; // stores counter for offset of declarations at previous nesting level 
 		decOffset=-2;
 		
 		int parOffset=1;
 		for (ParNode par : n.parlist)
-			if (hmn.put(par.id, new STentry(nestingLevel,par.getType(),parOffset++)) != null) {
-				System.out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
+			if (symTable.put(par.sym, new STentry(nestingLevel,par.getType(),parOffset++)) != null) {
+				out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
 				stErrors++;
 			}
 		for (Node dec : n.declist) visit(dec);
 		visit(n.exp);
-		//rimuovere la hashmap corrente poiche' esco dallo scope               
-		symTable.remove(nestingLevel--);
+		//rimuovere lo scope corrente poiche' esco dallo scope               
+		symTable.exitScope();
+		nestingLevel--;
 		decOffset=prevNLDecOffset; // restores counter for offset of declarations at previous nesting level 
-		return null;
 	}
 
 	@Override
 	public Void visitNode(ClassNode n) throws VoidException {
 		if (print) printNode(n);
-		Map<String, STentry> hm = symTable.get(nestingLevel);
 		ArrayList<TypeNode> fields = new ArrayList<>();
 		ArrayList<MethodTypeNode> methods = new ArrayList<>();
 
@@ -89,18 +149,19 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		ClassTypeNode classTypeNode = new ClassTypeNode(fields, methods);
 
 		// aggiungo il tipo della classe all'interno della rispettiva STEntry
-		STentry entry = new STentry(nestingLevel, classTypeNode, decOffset--);
-		if (hm.put(n.id, entry) != null) {
-			System.out.println("Class id " + n.id + " at line "+ n.getLine() +" already declared");
+		STentry entry = new STentry(nestingLevel, classTypeNode, decOffset--, n);
+		if (symTable.put(n.sym, entry) != null) {
+			out.println("Class id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
 		}
 
-		// creare una nuova hashmap per la virtual table da inserire anche all'interno della symbol table già creata
+		// creare una nuova hashmap per la virtual table e un nuovo scope nella symbol table con le stesse entry
 		nestingLevel++;
 		// la virtual table contiene tutte le definizioni di campi e metodi relativi al nome di una classe
-		Map<String, STentry> virtualTable = new HashMap<>();
-		classTable.put(n.id, virtualTable);
-		symTable.add(virtualTable);
+		IntMap<STentry> virtualTable = new IntMap<>();
+		classTable.put(n.sym, virtualTable);
+		currentClass = n.sym;
+		symTable.enterScope();
 		int prevNLDecOffset=decOffset; // stores counter for offset of declarations at previous nesting level
 		// nel layout deciso a priori, decOffset indica il valore
 		// di offset per i metodi della classe, che per definizione parte da 0, per creare correttamente il layout dello HEAP
@@ -110,8 +171,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		int fieldOffset=-1;
 		// visita di tutti i campi dichiarati per la classe, in modo da verificare che non ci siano conflitti di dichiarazioni già esistenti
 		for (FieldNode field : n.fieldlist) {
-			if (virtualTable.put(field.id, new STentry(nestingLevel, field.getType(), fieldOffset--)) != null) {
-				System.out.println("Field id " + field.id + " at line " + n.getLine() + " already declared");
+			STentry fieldEntry = new STentry(nestingLevel, field.getType(), fieldOffset--);
+			virtualTable.put(field.sym, fieldEntry);
+			if (symTable.put(field.sym, fieldEntry) != null) {
+				out.println("Field id " + field.id + " at line " + n.getLine() + " already declared");
 				stErrors++;
 			}
 			// aggiorno la lista fields relativa al ClassTypeNode
@@ -119,15 +182,17 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		}
 
 		// visita di tutti i metodi dichiarati all'interno della classe
+		if (declareOnly.contains(n)) declareOnly.addAll(n.methodlist);
 		for (MethodNode method : n.methodlist) {
 			visit(method);
 
 			// aggiorno la lista methods relativa al ClassTypeNode
-			methods.add(new MethodTypeNode(new ArrowTypeNode(method.parlist.stream().map(DecNode::getType).collect(Collectors.toList()), method.retType)));
+			methods.add(types.method(types.arrow(method.parlist.stream().map(DecNode::getType).collect(Collectors.toList()), method.retType)));
 		}
 
-		//rimuovere la hashmap corrente poiche' esco dallo scope
-		symTable.remove(nestingLevel--);
+		//rimuovere lo scope corrente poiche' esco dallo scope
+		symTable.exitScope();
+		nestingLevel--;
 		decOffset=prevNLDecOffset; // restores counter for offset of declarations at previous nesting level
 		return null;
 	}
@@ -135,45 +200,59 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	@Override
 	public Void visitNode(MethodNode n) throws VoidException {
 		if (print) printNode(n);
-		// recupero la symbol table della classe, di fatto è la Virtual Table
-		Map<String, STentry> hm = symTable.get(nestingLevel);
+		// recupero la Virtual Table della classe corrente
+		IntMap<STentry> hm = classTable.get(currentClass);
 		List<TypeNode> parTypes = new ArrayList<>();
 		for (ParNode par : n.parlist) parTypes.add(par.getType());
 		n.offset = decOffset;
-		STentry entry = new STentry(nestingLevel, new MethodTypeNode(new ArrowTypeNode(parTypes,n.retType)),decOffset++);
+		STentry entry = new STentry(nestingLevel, types.method(types.arrow(parTypes,n.retType)),decOffset++,n);
 
-		// aggiungo nella Virtual Table la STEntry del metodo associato al suo ID
-		if (hm.put(n.id, entry) != null) {
-			System.out.println("Method id " + n.id + " at line "+ n.getLine() +" already declared");
+		// aggiungo nella Virtual Table (e nello scope della classe) la STEntry del metodo associato al suo ID
+		hm.put(n.sym, entry);
+		if (symTable.put(n.sym, entry) != null) {
+			out.println("Method id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
 		}
-		//creare una nuova hashmap per la symTable relativa allo scope del metodo
+		if (declareOnly.contains(n)) return null;
+		SymbolTableASTVisitor f = parallel != null && nestingLevel == 1 ? fork() : null;
+		if (!deferred(() -> f.bodyOf(n), f)) bodyOf(n);
+		return null;
+	}
+
+	private void bodyOf(MethodNode n) {
+		//creare un nuovo scope nella symTable relativo al metodo
 		nestingLevel++;
-		Map<String, STentry> hmn = new HashMap<>();
-		symTable.add(hmn);
+		symTable.enterScope();
 		int prevNLDecOffset=decOffset; // stores counter for offset of declarations at previous nesting level
 		decOffset=1;
 
 		for (ParNode par : n.parlist)
-			if (hmn.put(par.id, new STentry(nestingLevel,par.getType(),decOffset++)) != null) {
-				System.out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
+			if (symTable.put(par.sym, new STentry(nestingLevel,par.getType(),decOffset++)) != null) {
+				out.println("Par id " + par.id + " at line "+ n.getLine() +" already declared");
 				stErrors++;
 			}
+		decOffset=-2; // le dichiarazioni locali seguono l'indirizzo di ritorno, come nelle funzioni
 		for (Node dec : n.declist) visit(dec);
 		visit(n.exp);
-		//rimuovere la hashmap corrente poiche' esco dallo scope
-		symTable.remove(nestingLevel--);
+		// getter: nessun parametro ne' dichiarazione, corpo costituito da un campo della classe
+		n.getter = null;
+		if (inlineGetters && n.parlist.isEmpty() && n.declist.isEmpty() && n.exp instanceof IdNode) {
+			STentry field = ((IdNode) n.exp).entry;
+			if (field != null && field.decl == null && field.nl == nestingLevel-1) n.getter = field;
+		}
+		//rimuovere lo scope corrente poiche' esco dallo scope
+		symTable.exitScope();
+		nestingLevel--;
 		decOffset=prevNLDecOffset; // restores counter for offset of declarations at previous nesting level
-		return null;
 	}
 
 	@Override
 	public Void visitNode(ClassCallNode n) throws VoidException {
 		if (print) printNode(n);
 
-		STentry entry = stLookup(n.id);
+		STentry entry = stLookup(n.sym);
 		if (entry == null) {
-			System.out.println("Var id " + n.id + " at line "+ n.getLine() + " not declared");
+			out.println("Var id " + n.id + " at line "+ n.getLine() + " not declared");
 			stErrors++;
 			return null;
 		} else {
@@ -182,8 +261,8 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 		}
 
 		// ci serve il RefTypeNode: recupero le informazioni su id della classe e id del metodo chiamato
-		String classId = ((RefTypeNode)entry.type).classId;
-		STentry methodEntry = classTable.get(classId).get(n.idMethod);
+		int classSym = ((RefTypeNode)entry.type).classSym;
+		STentry methodEntry = classTable.get(classSym).get(n.methodSym);
 		n.methodEntry = methodEntry;
 
 		// visito gli argomenti
@@ -195,12 +274,13 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	@Override
 	public Void visitNode(VarNode n) {
 		if (print) printNode(n);
-		visit(n.exp);
-		Map<String, STentry> hm = symTable.get(nestingLevel);
-		STentry entry = new STentry(nestingLevel,n.getType(),decOffset--);
+		if (!declareOnly.contains(n)) visit(n.exp);
+		n.offset = decOffset;
+		STentry entry = new STentry(nestingLevel,n.getType(),decOffset--,n);
+		decOffset -= n.objectWords; // oggetto allocato nel frame
 		//inserimento di ID nella symtable
-		if (hm.put(n.id, entry) != null) {
-			System.out.println("Var id " + n.id + " at line "+ n.getLine() +" already declared");
+		if (symTable.put(n.sym, entry) != null) {
+			out.println("Var id " + n.id + " at line "+ n.getLine() +" already declared");
 			stErrors++;
 		}
 		return null;
@@ -210,10 +290,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	public Void visitNode(NewNode n) throws VoidException {
 		if (print) printNode(n);
 		// recupero la entry relativa alla dichiarazione della classe
-		Map<String, STentry> methodEntry = classTable.get(n.id);
-		STentry entry = symTable.get(0).get(n.id);
+		IntMap<STentry> methodEntry = classTable.get(n.sym);
+		STentry entry = symTable.lookup(n.sym, 0);
 		if(methodEntry == null || entry == null) {
-			System.out.println("Class id " + n.id + " at line "+ n.getLine() +" not declared");
+			out.println("Class id " + n.id + " at line "+ n.getLine() +" not declared");
 			stErrors++;
 		} else {
 			n.entry = entry;
@@ -320,9 +400,9 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	@Override
 	public Void visitNode(CallNode n) {
 		if (print) printNode(n);
-		STentry entry = stLookup(n.id);
+		STentry entry = stLookup(n.sym);
 		if (entry == null) {
-			System.out.println("Fun id " + n.id + " at line "+ n.getLine() + " not declared");
+			out.println("Fun id " + n.id + " at line "+ n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			n.entry = entry;
@@ -335,10 +415,10 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 	@Override
 	public Void visitNode(IdNode n) {
 		if (print) printNode(n);
-		STentry entry = stLookup(n.id);
+		STentry entry = stLookup(n.sym);
 
 		if (entry == null) {
-			System.out.println("Var or Par id " + n.id + " at line "+ n.getLine() + " not declared");
+			out.println("Var or Par id " + n.id + " at line "+ n.getLine() + " not declared");
 			stErrors++;
 		} else {
 			n.entry = entry;
@@ -349,13 +429,13 @@ public class SymbolTableASTVisitor extends BaseASTVisitor<Void,VoidException> {
 
 	@Override
 	public Void visitNode(BoolNode n) {
-		if (print) printNode(n, n.val.toString());
+		if (print) printNode(n, String.valueOf(n.val));
 		return null;
 	}
 
 	@Override
 	public Void visitNode(IntNode n) {
-		if (print) printNode(n, n.val.toString());
+		if (print) printNode(n, String.valueOf(n.val));
 		return null;
 	}
 
@@ -1,47 +1,124 @@
 package compiler;
 
 import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.*;
 import compiler.lib.*;
 import compiler.exc.*;
+import compiler.ir.*;
 import svm.*;
 
 public class Test {
     public static void main(String[] args) throws Exception {
    			
     	String fileName = "provaClassi.fool";
+    	boolean compileOnly = false; // -c: stops after writing the .asm file (assembler and SVM are never loaded)
+    	String dumpFormat = null;    // -dump[=text|json|dot]: dumps the enriched AST
+    	String dumpFile = null;      // -dump-file=F: writes the dump to F instead of standard output
+    	int dumpDepth = Integer.MAX_VALUE, dumpNodes = Integer.MAX_VALUE; // -dump-depth=N, -dump-nodes=N
+    	Set<String> dumpOnly = null; // -dump-only=id,...: dumps only these top-level declarations
+    	boolean deadCode = true;     // -no-dce: generates code also for declarations unreachable from the main expression
+    	boolean escape = true;       // -no-escape: allocates every object on the heap
+    	boolean inline = true;       // -no-inline: compiles getter calls as method calls
+    	boolean registerVM = false;  // -rvm: runs the program on the register VM instead of the stack SVM
+    	boolean optimize = false;    // -O: optimizes the generated code on the linear IR (compiler.ir)
+    	boolean peephole = true;     // -no-peephole: with -O, runs only the control flow passes
+    	boolean dumpIR = false;      // -dump-ir: writes the IR (after -O) with its virtual stack slots to file.ir
+    	boolean mmap = true;         // -no-mmap: reads the .fool and .asm files into heap buffers instead of mapping them
+    	boolean memo = false;        // -memo: memoizes pure recursive functions over int and bool
+    	int memoSize = 1024;         // -memo-size=N: entries per memo table in the SVM
+    	String memoEviction = "lru"; // -memo-eviction=lru|fifo (resolved only on the SVM path, see -c)
+    	boolean parallel = false;    // -parallel: analyzes and generates code for top-level function and method bodies in parallel
+    	boolean compact = false;     // -compact: runs the front end on the compact AST (CompactAST); the object AST is built only for the back end
+    	for (String arg : args)
+    		try {
+    			if (arg.equals("-c")) compileOnly = true;
+    			else if (arg.equals("-dump")) dumpFormat = "text";
+    			else if (arg.startsWith("-dump=")) dumpFormat = arg.substring(6);
+    			else if (arg.startsWith("-dump-file=")) dumpFile = arg.substring(11);
+    			else if (arg.startsWith("-dump-depth=")) dumpDepth = Integer.parseInt(arg.substring(12));
+    			else if (arg.startsWith("-dump-nodes=")) dumpNodes = Integer.parseInt(arg.substring(12));
+    			else if (arg.startsWith("-dump-only=")) dumpOnly = new HashSet<>(Arrays.asList(arg.substring(11).split(",")));
+    			else if (arg.equals("-no-dce")) deadCode = false;
+    			else if (arg.equals("-no-escape")) escape = false;
+    			else if (arg.equals("-no-inline")) inline = false;
+    			else if (arg.equals("-rvm")) registerVM = true;
+    			else if (arg.equals("-O")) optimize = true;
+    			else if (arg.equals("-no-peephole")) peephole = false;
+    			else if (arg.equals("-dump-ir")) dumpIR = true;
+    			else if (arg.equals("-parallel")) parallel = true;
+    			else if (arg.equals("-memo")) memo = true;
+    			else if (arg.equals("-no-mmap")) mmap = false;
+    			else if (arg.equals("-compact")) compact = true;
+    			else if (arg.startsWith("-memo-size=")) memoSize = Integer.parseInt(arg.substring(11));
+    			else if (arg.startsWith("-memo-eviction=")) memoEviction = arg.substring(15);
+    			else if (arg.startsWith("-")) usage("unknown option "+arg);
+    			else fileName = arg;
+    		} catch (NumberFormatException e) {
+    			usage("not a number in "+arg);
+    		}
+    	if (dumpFormat != null && !TreeDump.FORMATS.contains(dumpFormat))
+    		usage("unknown dump format "+dumpFormat+" (expected: "+String.join(" | ", TreeDump.FORMATS)+")");
+    	if (compact && dumpFormat != null)
+    		usage("-dump shows the enriched object AST, not available with -compact");
+    	if (!(memoEviction.equals("lru") || memoEviction.equals("fifo")))
+    		usage("unknown memo eviction "+memoEviction+" (expected: lru | fifo)");
 
-    	CharStream chars = CharStreams.fromFileName(fileName);
+    	System.out.println("Generating ST via lexer and parser.");
+    	String launchTime = System.getProperty("fool.launchTime"); // ms since the epoch, set by the "fool" launcher
+    	if (launchTime != null && launchTime.matches("[0-9]{1,18}")) // no timing line for a malformed value
+    		System.err.println("Time to first output: "+(System.currentTimeMillis()-Long.parseLong(launchTime))+" ms");
+
+    	CharStream chars = mmap ? MappedCharStream.fromFileName(fileName) : CharStreams.fromFileName(fileName);
     	FOOLLexer lexer = new FOOLLexer(chars);
     	CommonTokenStream tokens = new CommonTokenStream(lexer);
-    	FOOLParser parser = new FOOLParser(tokens);
+    	TwoStageParse<FOOLParser,ParseTree> parse = TwoStageParse.parse(tokens, FOOLParser::new, FOOLParser::prog);
+    	FOOLParser parser = parse.parser;
 
-    	System.out.println("Generating ST via lexer and parser.");
-    	ParseTree st = parser.prog();
+    	ParseTree st = parse.tree;
+    	System.out.println(parse);
+    	if (mmap) System.out.println("Source memory-mapped: "+((MappedCharStream) chars).mappedBytes()+" bytes not copied to the heap.");
     	System.out.println("You had "+lexer.lexicalErrors+" lexical errors and "+
     		parser.getNumberOfSyntaxErrors()+" syntax errors.\n");
 
     	System.out.println("Generating AST.");
-    	ASTGenerationSTVisitor visitor = new ASTGenerationSTVisitor(); // use true to visualize the ST
-    	Node ast = visitor.visit(st);
+    	ASTGenerationSTVisitor visitor = compact ? null : new ASTGenerationSTVisitor(); // use true to visualize the ST
+    	CompactAST arena = compact ? CompactAST.of(st) : null;
+    	Node ast = compact ? null : visitor.visit(st);
+    	Types types = compact ? arena.types : visitor.types;
+    	if (compact) System.out.println(arena);
     	System.out.println("");
 
     	System.out.println("Enriching AST via symbol table.");
-    	SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor();
-    	symtableVisitor.visit(ast);
-    	System.out.println("You had "+symtableVisitor.stErrors+" symbol table errors.\n");
-
-    	System.out.println("Visualizing Enriched AST.");
-    	new PrintEASTVisitor().visit(ast);
-    	System.out.println("");
+    	SymbolTableASTVisitor symtableVisitor = new SymbolTableASTVisitor(types);
+    	symtableVisitor.inlineGetters = inline;
+    	CompactCheck compactCheck = compact ? new CompactCheck(arena) : null;
+    	if (compact) compactCheck.resolve();
+    	else if (parallel) symtableVisitor.visitParallel(ast, ForkJoinPool.commonPool());
+    	else symtableVisitor.visit(ast);
+    	int stErrors = compact ? compactCheck.stErrors : symtableVisitor.stErrors;
+    	System.out.println("You had "+stErrors+" symbol table errors.\n");
+
+    	if (dumpFormat != null) {
+    		System.out.println("Visualizing Enriched AST.");
+    		System.out.flush();
+    		try (PrintWriter dumpOut = dumpFile == null ? null : new PrintWriter(new BufferedWriter(new FileWriter(dumpFile), 1<<16))) {
+    			PrintWriter w = dumpOut != null ? dumpOut : new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1<<16));
+    			new PrintEASTVisitor(TreeDump.of(dumpFormat, w), dumpDepth, dumpNodes, dumpOnly).dump(ast);
+    		}
+    		System.out.println("");
+    	}
 
     	System.out.println("Checking Types.");
     	try {
-    		TypeCheckEASTVisitor typeCheckVisitor = new TypeCheckEASTVisitor();
-    		TypeNode mainType = typeCheckVisitor.visit(ast);
+    		TypeCheckEASTVisitor typeCheckVisitor = new TypeCheckEASTVisitor(types);
+    		TypeNode mainType = compact ? compactCheck.typeCheck()
+    			: parallel ? typeCheckVisitor.visitParallel(ast, ForkJoinPool.commonPool()) : typeCheckVisitor.visit(ast);
     		System.out.print("Type of main program expression is: ");
-    		new PrintEASTVisitor().visit(mainType);
+    		System.out.flush();
+    		new PrintEASTVisitor().dump(mainType);
     	} catch (IncomplException e) {    		
     		System.out.println("Could not determine main program expression type due to errors detected before type checking.");
     	} catch (TypeException e) {
@@ -49,34 +126,106 @@ public class Test {
     	}       	
     	System.out.println("You had "+FOOLlib.typeErrors+" type checking errors.\n");
 
-    	int frontEndErrors = lexer.lexicalErrors+parser.getNumberOfSyntaxErrors()+symtableVisitor.stErrors+FOOLlib.typeErrors;
+    	int frontEndErrors = lexer.lexicalErrors+parser.getNumberOfSyntaxErrors()+stErrors+FOOLlib.typeErrors;
 		System.out.println("You had a total of "+frontEndErrors+" front-end errors.\n");
 		
 		if ( frontEndErrors > 0) System.exit(1);   
 
+    	if (compact) { // correct program: object AST enriched (entries and frame layout) for the back end
+    		ast = arena.toAST();
+    		arena = null;
+    		compactCheck = null;
+    		if (parallel) symtableVisitor.visitParallel(ast, ForkJoinPool.commonPool());
+    		else symtableVisitor.visit(ast);
+    	}
+
+    	if (escape) {
+    		EscapeEASTVisitor escapeVisitor = new EscapeEASTVisitor();
+    		if (escapeVisitor.analyze(ast) > 0) { // frame layout with the allocated objects
+    			SymbolTableASTVisitor layoutVisitor = new SymbolTableASTVisitor(types);
+    			layoutVisitor.inlineGetters = inline;
+    			layoutVisitor.visit(ast);
+    		}
+    		System.out.println(escapeVisitor+"\n");
+    	}
+
+    	if (memo) {
+    		MemoEASTVisitor memoVisitor = new MemoEASTVisitor();
+    		memoVisitor.analyze(ast);
+    		System.out.println(memoVisitor+"\n");
+    	}
+
     	System.out.println("Generating code.");
-    	String code = new CodeGenerationASTVisitor().visit(ast);        
+    	CodeGenerationASTVisitor codeGenVisitor = new CodeGenerationASTVisitor();
+    	Set<DecNode> dead = new HashSet<>();
+    	if (deadCode) {
+    		DeadCodeEASTVisitor deadCodeVisitor = new DeadCodeEASTVisitor();
+    		dead = deadCodeVisitor.deadDeclarations(ast);
+    		codeGenVisitor.dead.addAll(dead);
+    		System.out.println(deadCodeVisitor);
+    	}
+    	String code = parallel ? codeGenVisitor.visitParallel(ast, ForkJoinPool.commonPool()) : codeGenVisitor.visit(ast);
+    	if (optimize || dumpIR) {
+    		Program ir = Program.of(code);
+    		if (optimize) {
+    			int words = ir.words();
+    			PassManager passes = PassManager.standard();
+    			passes.setEnabled("peephole", peephole);
+    			passes.run(ir);
+    			System.out.println(passes);
+    			System.out.println("Code size: "+words+" -> "+ir.words()+" words.");
+    			code = ir.toAssembly();
+    		}
+    		if (dumpIR) {
+    			BufferedWriter irOut = new BufferedWriter(new FileWriter(fileName+".ir"));
+    			irOut.write(ir.listing());
+    			irOut.close();
+    		}
+    	}
     	BufferedWriter out = new BufferedWriter(new FileWriter(fileName+".asm")); 
     	out.write(code);
     	out.close(); 
     	System.out.println("");
+    	if (compileOnly) return;
+
+    	if (registerVM) {
+    		System.out.println("Generating register VM code.");
+    		RegisterCodeGenerationASTVisitor registerCodeGenVisitor = new RegisterCodeGenerationASTVisitor();
+    		registerCodeGenVisitor.dead.addAll(dead);
+    		int[] registerCode = registerCodeGenVisitor.generate(ast);
+    		System.out.println(registerCode.length+" words of code.\n");
+    		System.out.println("Running generated code via Register Virtual Machine.");
+    		new RegisterVM(registerCode).cpu();
+    		return;
+    	}
 
     	System.out.println("Assembling generated code.");
-    	CharStream charsASM = CharStreams.fromFileName(fileName+".asm");
+    	CharStream charsASM = mmap ? MappedCharStream.fromFileName(fileName+".asm") : CharStreams.fromFileName(fileName+".asm");
     	SVMLexer lexerASM = new SVMLexer(charsASM);
     	CommonTokenStream tokensASM = new CommonTokenStream(lexerASM);
-    	SVMParser parserASM = new SVMParser(tokensASM);
-
-    	parserASM.assembly();
+    	TwoStageParse<SVMParser,ParseTree> parseASM = TwoStageParse.parse(tokensASM, SVMParser::new, SVMParser::assembly);
+    	SVMParser parserASM = parseASM.parser;
 
     	// needed only for debug
+    	System.out.println(parseASM);
+    	if (mmap) System.out.println("Assembly memory-mapped: "+((MappedCharStream) charsASM).mappedBytes()+" bytes not copied to the heap.");
     	System.out.println("You had: "+lexerASM.lexicalErrors+" lexical errors and "+parserASM.getNumberOfSyntaxErrors()+" syntax errors.\n");
     	if (lexerASM.lexicalErrors+parserASM.getNumberOfSyntaxErrors()>0) System.exit(1);
 
     	System.out.println("Running generated code via Stack Virtual Machine.");
-    	ExecuteVM vm = new ExecuteVM(parserASM.code);
+    	ExecuteVM vm = new ExecuteVM(parserASM.code, parserASM.data, OutputSink.buffered(System.out));
+    	vm.setMemoization(memoSize, MemoTable.Eviction.valueOf(memoEviction.toUpperCase()));
     	vm.cpu();
+    	List<MemoTable> memoTables = vm.memoTables();
+    	for (int k = 0; k < memoTables.size(); k++)
+    		if (memoTables.get(k) != null) System.out.println("Memo table "+k+": "+memoTables.get(k));
 
     }
-}
 
+    // reports a command line error before any phase runs
+    private static void usage(String error) {
+    	System.err.println("Test: "+error);
+    	System.err.println("Usage: Test [options] [file.fool], with the options listed at the top of Test.main");
+    	System.exit(2);
+    }
+}
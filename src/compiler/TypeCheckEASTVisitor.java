@@ -4,7 +4,9 @@ import compiler.AST.*;
 import compiler.exc.*;
 import compiler.lib.*;
 
+import java.io.PrintStream;
 import java.sql.Ref;
+import java.util.concurrent.ForkJoinPool;
 
 import static compiler.TypeRels.*;
 
@@ -16,8 +18,50 @@ import static compiler.TypeRels.*;
 //visitSTentry(s) ritorna, per una STentry s, il tipo contenuto al suo interno
 public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException> {
 
-	TypeCheckEASTVisitor() { super(true); } // enables incomplete tree exceptions 
-	TypeCheckEASTVisitor(boolean debug) { super(true,debug); } // enables print for debugging
+	private final Types types;
+	private PrintStream out = System.out; // messaggi d'errore
+	private OrderedOutput parallel; // visitParallel: dichiarazioni di primo livello controllate in parallelo
+
+	TypeCheckEASTVisitor(Types t) { super(true); types = t; } // enables incomplete tree exceptions 
+	TypeCheckEASTVisitor(Types t, boolean debug) { super(true,debug); types = t; } // enables print for debugging
+
+	// come visit, ma le funzioni e i metodi di primo livello vengono controllati in parallelo su pool
+	// (ognuno da un nuovo visitor: il type checking di una dichiarazione non dipende dalle altre);
+	// messaggi d'errore nello stesso ordine della visita sequenziale. Ritorna il tipo del programma
+	TypeNode visitParallel(Node ast, ForkJoinPool pool) throws TypeException {
+		if (print) return visit(ast); // la stampa dei nodi non e' ordinabile
+		parallel = new OrderedOutput(pool);
+		out = parallel.out;
+		try {
+			TypeNode t = visit(ast);
+			parallel.join(System.out);
+			return t;
+		} catch (TypeException | RuntimeException e) {
+			parallel.join(System.out); // messaggi delle dichiarazioni, prima dell'errore del programma
+			throw e;
+		} finally {
+			out = System.out;
+			parallel = null;
+		}
+	}
+
+	// in visitParallel controlla dec in un task, con il messaggio prefix in caso di errore;
+	// ritorna false se dec va controllata subito
+	private boolean deferred(Node dec, String prefix) {
+		if (parallel == null) return false;
+		parallel.fork(s -> {
+			TypeCheckEASTVisitor v = new TypeCheckEASTVisitor(types);
+			v.out = s;
+			try {
+				v.visit(dec);
+			} catch (IncomplException e) {
+			} catch (TypeException e) {
+				s.println(prefix + e.text);
+			}
+		});
+		out = parallel.out;
+		return true;
+	}
 
 	//checks that a type object is visitable (not incomplete) 
 	private TypeNode ckvisit(TypeNode t) throws TypeException {
@@ -31,10 +75,11 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		// visito le dichiarazioni
 		for (Node dec : n.declist)
 			try {
+				if (dec instanceof FunNode && deferred(dec, "Type checking error in a declaration: ")) continue;
 				visit(dec);
 			} catch (IncomplException e) { 
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
+				out.println("Type checking error in a declaration: " + e.text);
 			}
 		return visit(n.exp);
 	}
@@ -55,7 +100,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 				visit(dec);
 			} catch (IncomplException e) { 
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
+				out.println("Type checking error in a declaration: " + e.text);
 			}
 		if ( !isSubtype(visit(n.exp),ckvisit(n.retType)) ) 
 			throw new TypeException("Wrong return type for function " + n.id,n.getLine());
@@ -91,7 +136,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 				visit(dec);
 			} catch (IncomplException e) {
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration: " + e.text);
+				out.println("Type checking error in a declaration: " + e.text);
 			}
 		// infine controlliamo il tipo di ritorno che sia compatibile
 		if ( !isSubtype(visit(n.exp),ckvisit(n.retType)) )
@@ -105,10 +150,11 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		for (Node method : n.methodlist)
 			try {
 				// controlliamo i tipi dei metodi presenti all'interno della classe
+				if (deferred(method, "Type checking error in a declaration of a method: ")) continue;
 				visit(method);
 			} catch (IncomplException e) {
 			} catch (TypeException e) {
-				System.out.println("Type checking error in a declaration of a method: " + e.text);
+				out.println("Type checking error in a declaration of a method: " + e.text);
 			}
 		return null;
 
@@ -124,7 +170,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 	public TypeNode visitNode(IfNode n) throws TypeException {
 		if (print) printNode(n);
 		// controlliamo che la condizione sia booleana
-		if ( !(isSubtype(visit(n.cond), new BoolTypeNode())) )
+		if ( !(isSubtype(visit(n.cond), Types.BOOL)) )
 			throw new TypeException("Non boolean condition in if",n.getLine());
 		TypeNode t = visit(n.th);
 		TypeNode e = visit(n.el);
@@ -142,36 +188,36 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 		// verifico che i due operandi siano in relazione di subtyping
 		if ( !(isSubtype(l, r) || isSubtype(r, l)) )
 			throw new TypeException("Incompatible types in equal",n.getLine());
-		return new BoolTypeNode();
+		return Types.BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(TimesNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())) )
+		if ( !(isSubtype(visit(n.left), Types.INT)
+				&& isSubtype(visit(n.right), Types.INT)) )
 			throw new TypeException("Non integers in multiplication",n.getLine());
-		return new IntTypeNode();
+		return Types.INT;
 	}
 
 	@Override
 	public TypeNode visitNode(PlusNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())) )
+		if ( !(isSubtype(visit(n.left), Types.INT)
+				&& isSubtype(visit(n.right), Types.INT)) )
 			throw new TypeException("Non integers in sum",n.getLine());
-		return new IntTypeNode();
+		return Types.INT;
 	}
 
 	@Override
 	public TypeNode visitNode(NotNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che l'operando siano in relazione di subtyping col tipo booleano
-		if ( !(isSubtype(visit(n.node), new BoolTypeNode())))
+		if ( !(isSubtype(visit(n.node), Types.BOOL)))
 			throw new TypeException("Non boolean in not",n.getLine());
-		return new BoolTypeNode();
+		return Types.BOOL;
 	}
 
 	@Override
@@ -200,68 +246,68 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 	public TypeNode visitNode(LessEqualNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.left), new IntTypeNode())))
+		if ( !(isSubtype(visit(n.left), Types.INT)))
 			throw new TypeException("Non integers in lesseq, type is " + visit(n.left),n.getLine());
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.right), new IntTypeNode())))
+		if ( !(isSubtype(visit(n.right), Types.INT)))
 			throw new TypeException("Non integers in lesseq, type is " + visit(n.right),n.getLine());
-		return new BoolTypeNode();
+		return Types.BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(GreaterEqualNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.left), new IntTypeNode())))
+		if ( !(isSubtype(visit(n.left), Types.INT)))
 			throw new TypeException("Non integers in greq",n.getLine());
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.right), new IntTypeNode())))
+		if ( !(isSubtype(visit(n.right), Types.INT)))
 			throw new TypeException("Non integers in greq",n.getLine());
-		return new BoolTypeNode();
+		return Types.BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(OrNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo booleano
-		if ( !(isSubtype(visit(n.left), new BoolTypeNode())))
+		if ( !(isSubtype(visit(n.left), Types.BOOL)))
 			throw new TypeException("Non boolean in or",n.getLine());
 		// verifico che i due operandi siano in relazione di subtyping col tipo booleano
-		if ( !(isSubtype(visit(n.right), new BoolTypeNode())))
+		if ( !(isSubtype(visit(n.right), Types.BOOL)))
 			throw new TypeException("Non boolean in or",n.getLine());
-		return new BoolTypeNode();
+		return Types.BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(AndNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo booleano
-		if ( !(isSubtype(visit(n.left), new BoolTypeNode())))
+		if ( !(isSubtype(visit(n.left), Types.BOOL)))
 			throw new TypeException("Non boolean in and",n.getLine());
 		// verifico che i due operandi siano in relazione di subtyping col tipo booleano
-		if ( !(isSubtype(visit(n.right), new BoolTypeNode())))
+		if ( !(isSubtype(visit(n.right), Types.BOOL)))
 			throw new TypeException("Non boolean in and",n.getLine());
-		return new BoolTypeNode();
+		return Types.BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(DivNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())) )
+		if ( !(isSubtype(visit(n.left), Types.INT)
+				&& isSubtype(visit(n.right), Types.INT)) )
 			throw new TypeException("Non integers in div",n.getLine());
-		return new IntTypeNode();
+		return Types.INT;
 	}
 
 	@Override
 	public TypeNode visitNode(MinusNode n) throws TypeException {
 		if (print) printNode(n);
 		// verifico che i due operandi siano in relazione di subtyping col tipo intero
-		if ( !(isSubtype(visit(n.left), new IntTypeNode())
-				&& isSubtype(visit(n.right), new IntTypeNode())) )
+		if ( !(isSubtype(visit(n.left), Types.INT)
+				&& isSubtype(visit(n.right), Types.INT)) )
 			throw new TypeException("Non integers in minus",n.getLine());
-		return new IntTypeNode();
+		return Types.INT;
 	}
 
 	@Override
@@ -287,7 +333,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 
 	@Override
 	public TypeNode visitNode(EmptyNode nullNode) throws TypeException {
-		return new EmptyTypeNode();
+		return Types.EMPTY;
 	}
 
 	@Override
@@ -309,7 +355,7 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 			if ( !(isSubtype(visit(n.arglist.get(i)),at.allFields.get(i))) )
 				throw new TypeException("Wrong type for "+(i+1)+"-th parameter in the invocation of "+n.id,n.getLine());
 
-		return new RefTypeNode(n.id);
+		return types.ref(n.id, n.sym);
 	}
 
 	@Override
@@ -325,14 +371,14 @@ public class TypeCheckEASTVisitor extends BaseEASTVisitor<TypeNode,TypeException
 
 	@Override
 	public TypeNode visitNode(BoolNode n) {
-		if (print) printNode(n,n.val.toString());
-		return new BoolTypeNode();
+		if (print) printNode(n,String.valueOf(n.val));
+		return Types.BOOL;
 	}
 
 	@Override
 	public TypeNode visitNode(IntNode n) {
-		if (print) printNode(n,n.val.toString());
-		return new IntTypeNode();
+		if (print) printNode(n,String.valueOf(n.val));
+		return Types.INT;
 	}
 	
 	@Override
@@ -3,20 +3,32 @@ package compiler;
 import compiler.AST.*;
 import compiler.lib.*;
 
-import java.sql.Ref;
-import java.util.Objects;
-
 public class TypeRels {
 
-	// valuta se il tipo "a" e' <= al tipo "b", dove "a" e "b" sono tipi di base: IntTypeNode o BoolTypeNode
+	// valuta se il tipo "a" e' <= al tipo "b". I tipi sono canonici (vedi Types): tipi uguali sono la stessa
+	// istanza, per cui i confronti sono tra riferimenti
 	public static boolean isSubtype(TypeNode a, TypeNode b) {
-		boolean refType = false;
-		if((a instanceof RefTypeNode) && (b instanceof RefTypeNode)){
-			refType = Objects.equals(((RefTypeNode) a).classId, ((RefTypeNode) b).classId);
+		if (a == b) return true;
+		if (a == Types.BOOL) return b == Types.INT;
+		if (a == Types.EMPTY) return b instanceof RefTypeNode;
+		// FOOL non ha ereditarieta' (cldec senza extends): una classe e' sottotipo solo di se stessa,
+		// cioe' dello stesso RefTypeNode canonico, e due RefTypeNode distinti non sono in relazione
+		if (a instanceof ArrowTypeNode && b instanceof ArrowTypeNode) { // risultato memorizzato nel tipo canonico a
+			ArrowTypeNode fa = (ArrowTypeNode) a, fb = (ArrowTypeNode) b;
+			Boolean r = fa.subtypeOf.get(fb);
+			if (r == null) fa.subtypeOf.put(fb, r = isArrowSubtype(fa, fb));
+			return r;
 		}
-		return refType || a.getClass().equals(b.getClass()) ||
-				((a instanceof BoolTypeNode) && (b instanceof IntTypeNode)) ||
-				((a instanceof EmptyTypeNode) && (b instanceof RefTypeNode));
+		if (a instanceof MethodTypeNode && b instanceof MethodTypeNode)
+			return isSubtype(((MethodTypeNode) a).fun, ((MethodTypeNode) b).fun);
+		return false;
 	}
 
+	// stessa arita', parametri controvarianti e tipo di ritorno covariante
+	private static boolean isArrowSubtype(ArrowTypeNode a, ArrowTypeNode b) {
+		if (a.parlist.size() != b.parlist.size() || !isSubtype(a.ret, b.ret)) return false;
+		for (int i = 0; i < a.parlist.size(); i++)
+			if (!isSubtype(b.parlist.get(i), a.parlist.get(i))) return false;
+		return true;
+	}
 }
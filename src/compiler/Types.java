@@ -0,0 +1,42 @@
+package compiler;
+
+import java.util.*;
+
+import compiler.AST.*;
+import compiler.lib.*;
+
+// tipi canonici (hash-consing): tipi strutturalmente uguali sono la stessa istanza,
+// quindi i confronti tra tipi sono confronti tra riferimenti e l'AST arricchito
+// non contiene copie dello stesso tipo.
+// I tipi di base sono unici per tutte le compilazioni, gli altri per compilazione
+// (i RefTypeNode sono indicizzati per simbolo, vedi Interner)
+public class Types {
+
+	public static final IntTypeNode INT = new IntTypeNode();
+	public static final BoolTypeNode BOOL = new BoolTypeNode();
+	public static final EmptyTypeNode EMPTY = new EmptyTypeNode();
+
+	private final IntMap<RefTypeNode> refs = new IntMap<>();
+	private final Map<List<TypeNode>, ArrowTypeNode> arrows = new HashMap<>();
+	private final Map<ArrowTypeNode, MethodTypeNode> methods = new HashMap<>();
+
+	synchronized RefTypeNode ref(String classId, int classSym) {
+		RefTypeNode t = refs.get(classSym);
+		if (t == null) refs.put(classSym, t = new RefTypeNode(classId, classSym));
+		return t;
+	}
+
+	// i tipi dei parametri e di ritorno devono essere canonici: la chiave li confronta per identita'
+	synchronized ArrowTypeNode arrow(List<TypeNode> parTypes, TypeNode ret) {
+		List<TypeNode> key = new ArrayList<>(parTypes.size()+1);
+		key.addAll(parTypes);
+		key.add(ret);
+		ArrowTypeNode t = arrows.get(key);
+		if (t == null) arrows.put(key, t = new ArrowTypeNode(new ArrayList<>(parTypes), ret));
+		return t;
+	}
+
+	synchronized MethodTypeNode method(ArrowTypeNode fun) {
+		return methods.computeIfAbsent(fun, MethodTypeNode::new);
+	}
+}
@@ -9,7 +9,7 @@ public class TypeException extends Exception {
 	public String text;
 
 	public TypeException(String t, int line) {
-		FOOLlib.typeErrors++;
+		synchronized (FOOLlib.class) { FOOLlib.typeErrors++; } // anche da piu' thread (vedi TypeCheckEASTVisitor.visitParallel)
 		text = t + " at line "+ line;
 	}
 
@@ -0,0 +1,62 @@
+package compiler.ir;
+
+import java.util.*;
+
+// blocco di base: sequenza di istruzioni con un solo punto di ingresso (le sue label) e di uscita (l'ultima istruzione)
+public final class Block {
+
+	public final List<String> labels = new ArrayList<>();
+	public final List<Instr> code = new ArrayList<>();
+	// calcolati da Program.link
+	public final List<Block> succ = new ArrayList<>();
+	public final List<Block> pred = new ArrayList<>();
+	// regione dello stack a cui appartiene il blocco (-1 se non e' raggiungibile) e altezza dello stack
+	// all'ingresso, relativa alla base della regione; calcolati da Program.link
+	public int region = -1, depth;
+
+	public Instr last() { return code.isEmpty() ? null : code.get(code.size()-1); }
+
+	public int words() {
+		int w = 0;
+		for (Instr i : code) w += i.words();
+		return w;
+	}
+
+	// variazione dell'altezza dello stack eseguendo le istruzioni [from, to), null se non e' nota (JS)
+	public static Integer stackEffect(List<Instr> code, int from, int to) {
+		int d = 0;
+		for (int i = from; i < to; i++) {
+			Op op = code.get(i).op;
+			if (op == Op.JS) return null;
+			d += op.pushes-op.pops;
+		}
+		return d;
+	}
+
+	// istruzioni con gli slot virtuali letti e scritti (%regione.slot; slot negativi: valori sotto la base
+	// della regione, ad esempio quelli impilati dal chiamante), in commenti: il testo resta assembly valido
+	public String listing() {
+		StringBuilder s = new StringBuilder();
+		for (String l : labels) s.append(l).append(":\n");
+		for (Instr i : code) {
+			s.append(i);
+			if (region >= 0) s.append(" /* ").append(slots(i.uses())).append(" -> ").append(slots(i.defs())).append(" */");
+			s.append('\n');
+		}
+		return s.toString();
+	}
+
+	private String slots(int[] slots) {
+		StringBuilder s = new StringBuilder();
+		for (int k : slots) s.append(s.length() == 0 ? "" : " ").append('%').append(region).append('.').append(k);
+		return s.length() == 0 ? "-" : s.toString();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		for (String l : labels) s.append(l).append(":\n");
+		for (Instr i : code) s.append(i).append('\n');
+		return s.toString();
+	}
+}
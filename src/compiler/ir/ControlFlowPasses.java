@@ -0,0 +1,72 @@
+package compiler.ir;
+
+import java.util.*;
+
+// passi sul grafo del flusso di controllo
+public class ControlFlowPasses {
+
+	// un salto a un blocco che contiene solo "b M" diventa un salto diretto a M
+	public static class ThreadJumps implements Pass {
+		@Override
+		public String name() { return "thread-jumps"; }
+
+		@Override
+		public int run(Program p) {
+			Map<String, Block> labels = p.labels();
+			int changes = 0;
+			for (Block b : p.blocks) {
+				Instr last = b.last();
+				if (last == null || !last.op.isBranch()) continue;
+				Block target = labels.get(last.label);
+				if (target == null || target.code.size() != 1 || target.last().op != Op.B || target.last().label.equals(last.label)) continue;
+				b.code.set(b.code.size()-1, new Instr(last.op, target.last().label));
+				changes++;
+			}
+			return changes;
+		}
+	}
+
+	// elimina i blocchi non raggiungibili dal primo blocco ne' dagli indirizzi caricati sullo stack (funzioni)
+	public static class RemoveUnreachable implements Pass {
+		@Override
+		public String name() { return "remove-unreachable"; }
+
+		@Override
+		public int run(Program p) {
+			if (p.blocks.isEmpty()) return 0;
+			Set<Block> reached = new HashSet<>();
+			Deque<Block> pending = new ArrayDeque<>();
+			pending.push(p.blocks.get(0));
+			Map<String, Block> labels = p.labels();
+			for (String l : p.addressTaken()) if (labels.containsKey(l)) pending.push(labels.get(l));
+			while (!pending.isEmpty()) {
+				Block b = pending.pop();
+				if (b == null || !reached.add(b)) continue;
+				for (Block s : b.succ) pending.push(s);
+			}
+			int before = p.blocks.size();
+			p.blocks.removeIf(b -> !reached.contains(b));
+			return before-p.blocks.size();
+		}
+	}
+
+	// elimina "b L" quando L e' il blocco successivo
+	public static class RemoveJumpToNext implements Pass {
+		@Override
+		public String name() { return "remove-jump-to-next"; }
+
+		@Override
+		public int run(Program p) {
+			int changes = 0;
+			for (int k = 0; k+1 < p.blocks.size(); k++) {
+				Block b = p.blocks.get(k);
+				Instr last = b.last();
+				if (last != null && last.op == Op.B && p.blocks.get(k+1).labels.contains(last.label)) {
+					b.code.remove(b.code.size()-1);
+					changes++;
+				}
+			}
+			return changes;
+		}
+	}
+}
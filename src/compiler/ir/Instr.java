@@ -0,0 +1,61 @@
+package compiler.ir;
+
+// istruzione SVM con il suo operando, se presente: un intero (push) o una label (push e salti)
+public final class Instr {
+
+	public final Op op;
+	public final int value;
+	public final String label;
+	// altezza dello stack prima dell'istruzione, relativa alla base della regione del suo blocco
+	// (calcolata da Program.link, vedi Block.region)
+	int depth;
+
+	public Instr(Op o) { this(o, 0, null); }
+	public Instr(Op o, int v) { this(o, v, null); }
+	public Instr(Op o, String l) { this(o, 0, l); }
+
+	private Instr(Op o, int v, String l) {
+		op = o;
+		value = v;
+		label = l;
+	}
+
+	public boolean hasOperand() { return op.hasOperand(); }
+
+	// parole di codice occupate
+	public int words() { return hasOperand() ? 2 : 1; }
+
+	// slot virtuali dello stack letti dall'istruzione: i valori che preleva (print legge la cima senza prelevarla)
+	public int[] uses() {
+		if (op == Op.PRINT) return new int[] {depth-1};
+		return range(depth-op.pops, op.pops);
+	}
+
+	// slot virtuali dello stack scritti dall'istruzione: i valori che lascia
+	public int[] defs() { return range(depth-op.pops, op.pushes); }
+
+	private static int[] range(int from, int n) {
+		int[] r = new int[n];
+		for (int k = 0; k < n; k++) r[k] = from+k;
+		return r;
+	}
+
+	// push di una costante intera
+	public boolean isConst() { return op == Op.PUSH && label == null; }
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Instr)) return false;
+		Instr i = (Instr) o;
+		return op == i.op && value == i.value && (label == null ? i.label == null : label.equals(i.label));
+	}
+
+	@Override
+	public int hashCode() { return op.hashCode()*31+(label != null ? label.hashCode() : value); }
+
+	@Override
+	public String toString() {
+		if (!hasOperand()) return op.mnemonic;
+		return op.mnemonic+" "+(label != null ? label : String.valueOf(value));
+	}
+}
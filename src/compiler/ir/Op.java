@@ -0,0 +1,56 @@
+package compiler.ir;
+
+import svm.SVMParser;
+
+// istruzioni della SVM, con il numero di valori che ciascuna preleva e lascia sullo stack
+// (JS trasferisce il controllo a un indirizzo calcolato: il suo effetto sullo stack non e' noto localmente)
+public enum Op {
+	PUSH("push", SVMParser.PUSH, 0, 1),
+	POP("pop", SVMParser.POP, 1, 0),
+	ADD("add", SVMParser.ADD, 2, 1),
+	SUB("sub", SVMParser.SUB, 2, 1),
+	MULT("mult", SVMParser.MULT, 2, 1),
+	DIV("div", SVMParser.DIV, 2, 1),
+	SW("sw", SVMParser.STOREW, 2, 0),
+	LW("lw", SVMParser.LOADW, 1, 1),
+	B("b", SVMParser.BRANCH, 0, 0),
+	BEQ("beq", SVMParser.BRANCHEQ, 2, 0),
+	BLEQ("bleq", SVMParser.BRANCHLESSEQ, 2, 0),
+	JS("js", SVMParser.JS, 1, 0),
+	LRA("lra", SVMParser.LOADRA, 0, 1),
+	SRA("sra", SVMParser.STORERA, 1, 0),
+	LTM("ltm", SVMParser.LOADTM, 0, 1),
+	STM("stm", SVMParser.STORETM, 1, 0),
+	LFP("lfp", SVMParser.LOADFP, 0, 1),
+	SFP("sfp", SVMParser.STOREFP, 1, 0),
+	CFP("cfp", SVMParser.COPYFP, 0, 0),
+	LHP("lhp", SVMParser.LOADHP, 0, 1),
+	SHP("shp", SVMParser.STOREHP, 1, 0),
+	PRINT("print", SVMParser.PRINT, 0, 0), // stampa la cima dello stack senza prelevarla
+	HALT("halt", SVMParser.HALT, 0, 0),
+	MGET("mget", SVMParser.MGET, 1, 2), // operando: tabella; preleva il numero di argomenti, lascia valore ed esito
+	MPUT("mput", SVMParser.MPUT, 1, 0); // preleva il numero di argomenti, memorizza il valore sottostante
+
+	public final String mnemonic;
+	final int token; // tipo del token SVM corrispondente
+	public final int pops, pushes;
+
+	Op(String m, int t, int po, int pu) {
+		mnemonic = m;
+		token = t;
+		pops = po;
+		pushes = pu;
+	}
+
+	// istruzione con un operando (intero o label)
+	public boolean hasOperand() { return this == PUSH || isBranch() || this == MGET || this == MPUT; }
+
+	// salto a una label (l'unico operando e' la label di destinazione)
+	public boolean isBranch() { return this == B || this == BEQ || this == BLEQ; }
+
+	// termina un blocco di base
+	public boolean endsBlock() { return isBranch() || this == JS || this == HALT; }
+
+	// l'esecuzione puo' proseguire con l'istruzione successiva (JS: al ritorno da una chiamata)
+	public boolean fallsThrough() { return this != B && this != HALT; }
+}
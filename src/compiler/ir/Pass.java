@@ -0,0 +1,12 @@
+package compiler.ir;
+
+// trasformazione del programma; run ritorna il numero di modifiche fatte (0 se il programma non e' cambiato)
+public interface Pass {
+
+	String name();
+
+	int run(Program p);
+
+	// statistiche dettagliate del passo (null se non ne ha)
+	default String report() { return null; }
+}
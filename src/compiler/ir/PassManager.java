@@ -0,0 +1,67 @@
+package compiler.ir;
+
+import java.util.*;
+
+// esegue in sequenza i passi abilitati, ripetendo la sequenza finche' qualche passo modifica il programma
+// (al piu' MAX_ROUNDS volte); dopo ogni passo che ha fatto modifiche ricalcola il grafo del flusso di controllo.
+// Per ogni passo tiene il numero di modifiche e il tempo totale
+public class PassManager {
+
+	public static final int MAX_ROUNDS = 10;
+
+	private final List<Pass> passes = new ArrayList<>();
+	private final Set<String> disabled = new HashSet<>();
+	private final Map<String, long[]> stats = new LinkedHashMap<>(); // nome -> {modifiche, nanosecondi}
+
+	public PassManager add(Pass p) {
+		passes.add(p);
+		stats.put(p.name(), new long[2]);
+		return this;
+	}
+
+	public void setEnabled(String name, boolean enabled) {
+		if (enabled) disabled.remove(name);
+		else disabled.add(name);
+	}
+
+	// ottimizzazioni a finestra e passi sul grafo del flusso di controllo
+	public static PassManager standard() {
+		return new PassManager()
+			.add(new Peephole())
+			.add(new ControlFlowPasses.ThreadJumps())
+			.add(new ControlFlowPasses.RemoveUnreachable())
+			.add(new ControlFlowPasses.RemoveJumpToNext());
+	}
+
+	// ritorna il numero totale di modifiche
+	public int run(Program p) {
+		int total = 0;
+		for (int round = 0; round < MAX_ROUNDS; round++) {
+			int changes = 0;
+			for (Pass pass : passes) {
+				if (disabled.contains(pass.name())) continue;
+				long start = System.nanoTime();
+				int c = pass.run(p);
+				if (c > 0) p.link();
+				long[] s = stats.get(pass.name());
+				s[0] += c;
+				s[1] += System.nanoTime()-start;
+				changes += c;
+			}
+			total += changes;
+			if (changes == 0) break;
+		}
+		return total;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder("IR passes:");
+		for (Map.Entry<String, long[]> e : stats.entrySet())
+			s.append(String.format(" %s %d%s (%.2f ms);", e.getKey(), e.getValue()[0],
+				disabled.contains(e.getKey()) ? " disabled" : "", e.getValue()[1]/1e6));
+		for (Pass p : passes)
+			if (!disabled.contains(p.name()) && p.report() != null) s.append("\n").append(p.report());
+		return s.toString();
+	}
+}
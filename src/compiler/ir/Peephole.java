@@ -0,0 +1,190 @@
+package compiler.ir;
+
+import java.util.*;
+import java.util.function.*;
+
+// ottimizzazione a finestra: in ogni blocco prova, a ogni posizione, le regole abilitate della tabella RULES,
+// finche' nessuna regola si applica piu'. Ogni regola sostituisce una sequenza di istruzioni con una
+// equivalente con lo stesso effetto sullo stack. Per ogni regola conta applicazioni e istruzioni eliminate
+public class Peephole implements Pass {
+
+	// regola applicabile alle istruzioni di b a partire dalla posizione i; ritorna il numero di istruzioni
+	// eliminate, -1 se la regola non si applica
+	interface Rule {
+		String name();
+		int apply(Peephole ctx, Block b, int i);
+	}
+
+	// sequenza di istruzioni che soddisfano i predicati di pattern, sostituita da replacement(sequenza)
+	// (null se la sostituzione non e' possibile)
+	private static class Pattern implements Rule {
+		private final String name;
+		private final List<Predicate<Instr>> pattern;
+		private final Function<List<Instr>, List<Instr>> replacement;
+
+		@SafeVarargs
+		Pattern(String n, Function<List<Instr>, List<Instr>> r, Predicate<Instr>... p) {
+			name = n;
+			replacement = r;
+			pattern = new ArrayList<>(p.length);
+			for (Predicate<Instr> q : p) pattern.add(q);
+		}
+
+		@Override
+		public String name() { return name; }
+
+		@Override
+		public int apply(Peephole ctx, Block b, int i) {
+			if (i+pattern.size() > b.code.size()) return -1;
+			for (int j = 0; j < pattern.size(); j++) if (!pattern.get(j).test(b.code.get(i+j))) return -1;
+			List<Instr> window = b.code.subList(i, i+pattern.size());
+			List<Instr> with = replacement.apply(new ArrayList<>(window));
+			if (with == null) return -1;
+			if (!Objects.equals(Block.stackEffect(window, 0, window.size()), Block.stackEffect(with, 0, with.size())))
+				throw new IllegalStateException("Rule "+name+" changes the stack effect of "+window);
+			window.clear();
+			window.addAll(with);
+			return pattern.size()-with.size();
+		}
+	}
+
+	private static Predicate<Instr> is(Op op) { return i -> i.op == op; }
+	private static Predicate<Instr> constant(int v) { return i -> i.isConst() && i.value == v; }
+	private static Predicate<Instr> constant() { return Instr::isConst; }
+	// istruzioni che mettono un valore sullo stack senza altri effetti
+	private static Predicate<Instr> pure() { return i -> i.op == Op.PUSH || i.op == Op.LFP || i.op == Op.LHP || i.op == Op.LRA || i.op == Op.LTM; }
+	private static Function<List<Instr>, List<Instr>> none() { return w -> Collections.emptyList(); }
+
+	private static Function<List<Instr>, List<Instr>> fold(IntBinaryOperator f) {
+		return w -> List.of(new Instr(Op.PUSH, f.applyAsInt(w.get(0).value, w.get(1).value)));
+	}
+
+	static final List<Rule> RULES = List.of(
+		new Pattern("add-zero", none(), constant(0), is(Op.ADD)),
+		new Pattern("sub-zero", none(), constant(0), is(Op.SUB)),
+		new Pattern("mult-one", none(), constant(1), is(Op.MULT)),
+		new Pattern("div-one", none(), constant(1), is(Op.DIV)),
+		new Pattern("fold-add", fold((a, b) -> a+b), constant(), constant(), is(Op.ADD)),
+		new Pattern("fold-sub", fold((a, b) -> a-b), constant(), constant(), is(Op.SUB)),
+		new Pattern("fold-mult", fold((a, b) -> a*b), constant(), constant(), is(Op.MULT)),
+		new Pattern("fold-div", w -> w.get(1).value == 0 ? null : fold((a, b) -> a/b).apply(w), constant(), constant(), is(Op.DIV)),
+		new Pattern("load-pop", none(), pure(), is(Op.POP)),
+		new Rule() { // "stm; ltm" lascia lo stack invariato: si elimina se il valore di $tm non viene piu' letto
+			@Override
+			public String name() { return "stm-ltm"; }
+
+			@Override
+			public int apply(Peephole ctx, Block b, int i) {
+				if (i+2 > b.code.size() || b.code.get(i).op != Op.STM || b.code.get(i+1).op != Op.LTM) return -1;
+				for (int j = i+2; j < b.code.size(); j++) {
+					Op op = b.code.get(j).op;
+					if (op == Op.STM || op == Op.HALT) {
+						b.code.subList(i, i+2).clear();
+						return 2;
+					}
+					if (op == Op.LTM || op == Op.JS) return -1;
+				}
+				return -1; // $tm potrebbe essere letto nei blocchi successori
+			}
+		},
+		new Rule() { // "push c" seguito (per fallthrough o con "b M") da un blocco "push k; beq/bleq L": l'esito del
+			         // confronto e' noto, si salta direttamente a L o al blocco che segue il confronto
+			@Override
+			public String name() { return "const-branch"; }
+
+			@Override
+			public int apply(Peephole ctx, Block b, int i) {
+				int n = b.code.size();
+				Instr c = b.code.get(i);
+				if (!c.isConst()) return -1;
+				boolean jump = i == n-2 && b.last().op == Op.B;
+				if (i != n-1 && !jump) return -1;
+				int k = ctx.index.get(b);
+				Block test = jump ? ctx.labels.get(b.last().label) : (k+1 < ctx.p.blocks.size() ? ctx.p.blocks.get(k+1) : null);
+				if (test == null || test == b || test.code.size() != 2 || !test.code.get(0).isConst()) return -1;
+				Instr branch = test.code.get(1);
+				int v = test.code.get(0).value;
+				boolean taken;
+				if (branch.op == Op.BEQ) taken = c.value == v;
+				else if (branch.op == Op.BLEQ) taken = c.value <= v;
+				else return -1;
+				String target;
+				if (taken) target = branch.label;
+				else {
+					int t = ctx.index.get(test);
+					if (t+1 >= ctx.p.blocks.size()) return -1;
+					target = ctx.label(ctx.p.blocks.get(t+1));
+				}
+				b.code.subList(i, n).clear();
+				b.code.add(new Instr(Op.B, target));
+				return n-i-1;
+			}
+		}
+	);
+
+	private final Set<String> disabled = new HashSet<>();
+	private final Map<String, long[]> stats = new LinkedHashMap<>(); // nome -> {applicazioni, istruzioni eliminate}
+	// stato di run
+	private Program p;
+	private Map<String, Block> labels;
+	private Map<Block, Integer> index;
+	private int fresh = 0;
+
+	public Peephole() {
+		for (Rule r : RULES) stats.put(r.name(), new long[2]);
+	}
+
+	public void setEnabled(String rule, boolean enabled) {
+		if (!stats.containsKey(rule)) throw new IllegalArgumentException("Unknown peephole rule: "+rule);
+		if (enabled) disabled.remove(rule);
+		else disabled.add(rule);
+	}
+
+	@Override
+	public String name() { return "peephole"; }
+
+	@Override
+	public int run(Program prog) {
+		p = prog;
+		labels = p.labels();
+		index = new IdentityHashMap<>();
+		for (int k = 0; k < p.blocks.size(); k++) index.put(p.blocks.get(k), k);
+		int changes = 0;
+		for (Block b : p.blocks)
+			for (int i = 0; i < b.code.size(); i++)
+				for (Rule r : RULES) {
+					if (disabled.contains(r.name())) continue;
+					int removed = r.apply(this, b, i);
+					if (removed < 0) continue;
+					long[] s = stats.get(r.name());
+					s[0]++;
+					s[1] += removed;
+					changes++;
+					i = Math.max(-1, i-3); // la sostituzione puo' creare nuove occorrenze che iniziano prima di i
+					break;
+				}
+		p = null;
+		labels = null;
+		index = null;
+		return changes;
+	}
+
+	// label del blocco b (ne aggiunge una nuova se b non ne ha)
+	private String label(Block b) {
+		if (!b.labels.isEmpty()) return b.labels.get(0);
+		String l;
+		do l = "peephole"+fresh++; while (labels.containsKey(l));
+		b.labels.add(l);
+		labels.put(l, b);
+		return l;
+	}
+
+	@Override
+	public String report() {
+		StringBuilder s = new StringBuilder("Peephole rules (applications/instructions removed):");
+		for (Map.Entry<String, long[]> e : stats.entrySet())
+			if (disabled.contains(e.getKey())) s.append(" ").append(e.getKey()).append(" disabled;");
+			else s.append(" ").append(e.getKey()).append(" ").append(e.getValue()[0]).append("/").append(e.getValue()[1]).append(";");
+		return s.toString();
+	}
+}
@@ -0,0 +1,189 @@
+package compiler.ir;
+
+import java.util.*;
+import org.antlr.v4.runtime.*;
+
+import svm.SVMLexer;
+
+// rappresentazione intermedia lineare del codice generato: blocchi di base nell'ordine in cui vengono emessi,
+// con il grafo del flusso di controllo (successori e predecessori di ogni blocco) e gli slot virtuali dello
+// stack letti e scritti da ogni istruzione (vedi link). Viene costruita dalle istruzioni prodotte da
+// CodeGenerationASTVisitor (of), trasformata dai passi di un PassManager e riportata ad assembly SVM
+// (toAssembly). La selezione delle istruzioni resta una sola, quella di CodeGenerationASTVisitor, il cui
+// testo e' usato anche senza -O (file .asm, cache per dichiarazione di IncrementalCompiler, CompileDaemon):
+// un secondo abbassamento dall'AST andrebbe tenuto allineato con il primo per ogni costrutto
+public final class Program {
+
+	public final List<Block> blocks = new ArrayList<>();
+	// direttive del segmento dati ("data L", "word L", "word k"), riportate invariate in toAssembly
+	public final List<String> data = new ArrayList<>();
+
+	public static Program of(String asm) {
+		Program p = new Program();
+		SVMLexer lexer = new SVMLexer(CharStreams.fromString(asm));
+		Map<Integer, Op> ops = new HashMap<>();
+		for (Op op : Op.values()) ops.put(op.token, op);
+		Block b = new Block();
+		Token t = lexer.nextToken();
+		while (t.getType() != Token.EOF) {
+			if (t.getChannel() != Token.DEFAULT_CHANNEL) {
+				t = lexer.nextToken();
+				continue;
+			}
+			if (t.getType() == SVMLexer.DATA || t.getType() == SVMLexer.WORD) {
+				Token arg = next(lexer);
+				if (arg.getType() != SVMLexer.LABEL && (t.getType() == SVMLexer.DATA || arg.getType() != SVMLexer.INTEGER))
+					throw new IllegalArgumentException("Bad operand "+arg.getText()+" at line "+arg.getLine());
+				p.data.add(t.getText()+" "+arg.getText());
+				t = lexer.nextToken();
+				continue;
+			}
+			if (t.getType() == SVMLexer.LABEL) { // definizione di label
+				Token col = next(lexer);
+				if (col.getType() != SVMLexer.COL) throw new IllegalArgumentException("Expected ':' after "+t.getText()+" at line "+t.getLine());
+				if (!b.code.isEmpty()) {
+					p.blocks.add(b);
+					b = new Block();
+				}
+				b.labels.add(t.getText());
+				t = lexer.nextToken();
+				continue;
+			}
+			Op op = ops.get(t.getType());
+			if (op == null) throw new IllegalArgumentException("Unexpected "+t.getText()+" at line "+t.getLine());
+			Instr i;
+			if (op.hasOperand()) {
+				Token arg = next(lexer);
+				if (arg.getType() == SVMLexer.INTEGER && !op.isBranch()) i = new Instr(op, Integer.parseInt(arg.getText()));
+				else if (arg.getType() == SVMLexer.LABEL) i = new Instr(op, arg.getText());
+				else throw new IllegalArgumentException("Bad operand "+arg.getText()+" at line "+arg.getLine());
+			} else i = new Instr(op);
+			b.code.add(i);
+			if (op.endsBlock()) {
+				p.blocks.add(b);
+				b = new Block();
+			}
+			t = lexer.nextToken();
+		}
+		if (!b.code.isEmpty() || !b.labels.isEmpty()) p.blocks.add(b);
+		p.link();
+		return p;
+	}
+
+	private static Token next(SVMLexer lexer) {
+		Token t;
+		do t = lexer.nextToken(); while (t.getChannel() != Token.DEFAULT_CHANNEL);
+		return t;
+	}
+
+	// blocco di ciascuna label
+	public Map<String, Block> labels() {
+		Map<String, Block> m = new HashMap<>();
+		for (Block b : blocks) for (String l : b.labels) m.put(l, b);
+		return m;
+	}
+
+	// ricalcola successori e predecessori (da chiamare dopo ogni modifica dei blocchi o dei salti)
+	public void link() {
+		Map<String, Block> labels = labels();
+		for (Block b : blocks) {
+			b.succ.clear();
+			b.pred.clear();
+		}
+		for (int k = 0; k < blocks.size(); k++) {
+			Block b = blocks.get(k);
+			Instr last = b.last();
+			if (last != null && last.op.isBranch()) b.succ.add(labels.get(last.label));
+			if ((last == null || last.op.fallsThrough()) && k+1 < blocks.size()) b.succ.add(blocks.get(k+1));
+		}
+		for (Block b : blocks) for (Block s : b.succ) if (s != null) s.pred.add(b);
+		assignSlots(labels);
+	}
+
+	// assegna a ogni blocco raggiungibile una regione e l'altezza dello stack all'ingresso, e a ogni istruzione
+	// l'altezza prima di eseguirla: lo slot virtuale k di una regione e' la posizione k dello stack sopra la sua
+	// base. Una regione inizia al primo blocco, a ogni punto di ingresso caricato sullo stack (funzioni e
+	// metodi) e dopo ogni js, il cui effetto sullo stack non e' noto localmente; due regioni che confluiscono
+	// nello stesso blocco vengono unite. Un blocco raggiunto con altezze diverse nella stessa regione viola
+	// la disciplina dello stack (IllegalStateException): link lo verifica dopo ogni passo che modifica il codice
+	private void assignSlots(Map<String, Block> labels) {
+		for (Block b : blocks) b.region = -1;
+		List<Block> roots = new ArrayList<>();
+		if (!blocks.isEmpty()) roots.add(blocks.get(0));
+		for (String l : addressTaken()) if (labels.containsKey(l)) roots.add(labels.get(l));
+		for (Block b : blocks) if (b.last() != null && b.last().op == Op.JS && !b.succ.isEmpty()) roots.add(b.succ.get(0));
+		int regions = 0;
+		Deque<Block> pending = new ArrayDeque<>();
+		for (Block r : roots) {
+			if (r == null || r.region >= 0) continue;
+			r.region = regions++;
+			r.depth = 0;
+			pending.push(r);
+			while (!pending.isEmpty()) {
+				Block b = pending.pop();
+				int d = b.depth;
+				for (Instr i : b.code) {
+					i.depth = d;
+					d += i.op.pushes-i.op.pops;
+				}
+				if (b.last() != null && b.last().op == Op.JS) continue; // il successore inizia una nuova regione
+				for (Block s : b.succ) {
+					if (s == null) continue;
+					if (s.region < 0) {
+						s.region = b.region;
+						s.depth = d;
+						pending.push(s);
+					} else if (s.region != b.region) merge(s.region, b.region, d-s.depth);
+					else if (s.depth != d)
+						throw new IllegalStateException("Stack height "+d+" and "+s.depth+" at "+(s.labels.isEmpty() ? "block "+blocks.indexOf(s) : s.labels.get(0)));
+				}
+			}
+		}
+	}
+
+	// unisce la regione from a into: l'altezza d nella regione from corrisponde a d+shift nella regione into
+	private void merge(int from, int into, int shift) {
+		for (Block b : blocks) {
+			if (b.region != from) continue;
+			b.region = into;
+			b.depth += shift;
+			for (Instr i : b.code) i.depth += shift;
+		}
+	}
+
+	// label il cui indirizzo viene caricato sullo stack o scritto nel segmento dati (funzioni e metodi, anche
+	// nelle dispatch table): punti di ingresso raggiungibili tramite JS
+	public Set<String> addressTaken() {
+		Set<String> s = new HashSet<>();
+		for (Block b : blocks) for (Instr i : b.code) if (i.op == Op.PUSH && i.label != null) s.add(i.label);
+		for (String d : data) if (d.matches("word [a-zA-Z].*")) s.add(d.substring(5));
+		return s;
+	}
+
+	public int words() {
+		int w = 0;
+		for (Block b : blocks) w += b.words();
+		return w;
+	}
+
+	public int instructions() {
+		int n = 0;
+		for (Block b : blocks) n += b.code.size();
+		return n;
+	}
+
+	// assembly con gli slot virtuali letti e scritti da ogni istruzione (vedi Block.listing)
+	public String listing() {
+		StringBuilder s = new StringBuilder();
+		for (Block b : blocks) s.append(b.listing());
+		for (String d : data) s.append(d).append("\n");
+		return s.toString();
+	}
+
+	public String toAssembly() {
+		StringBuilder s = new StringBuilder();
+		for (Block b : blocks) s.append(b);
+		for (String d : data) s.append(d).append("\n");
+		return s.toString();
+	}
+}
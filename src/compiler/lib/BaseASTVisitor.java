@@ -4,6 +4,7 @@ import compiler.AST.*;
 import compiler.exc.*;
 
 import static compiler.lib.FOOLlib.*;
+import static compiler.lib.NodeKind.*;
 
 public class BaseASTVisitor<S,E extends Exception> {
 
@@ -44,8 +45,49 @@ public class BaseASTVisitor<S,E extends Exception> {
 			return visitByAcc(v);
 	}
 
-	S visitByAcc(Visitable v) throws E {
-		return v.accept(this);
+	// dispatch dei nodi: uno switch sul tag del nodo che chiama direttamente l'overload di visitNode
+	// (un solo punto di dispatch, che il JIT puo' compilare come tabella di salti); gli STentry usano
+	// il double dispatch tramite accept (DispatchBenchmark lo misura anche per i nodi ridefinendo visitByAcc)
+	protected S visitByAcc(Visitable v) throws E {
+		if (!(v instanceof Node)) return v.accept(this); // STentry
+		Node n = (Node) v;
+		switch (n.kind) {
+			case PROG_LET_IN: return visitNode((ProgLetInNode) n);
+			case PROG: return visitNode((ProgNode) n);
+			case FUN: return visitNode((FunNode) n);
+			case PAR: return visitNode((ParNode) n);
+			case VAR: return visitNode((VarNode) n);
+			case PRINT: return visitNode((PrintNode) n);
+			case IF: return visitNode((IfNode) n);
+			case EQUAL: return visitNode((EqualNode) n);
+			case TIMES: return visitNode((TimesNode) n);
+			case PLUS: return visitNode((PlusNode) n);
+			case CALL: return visitNode((CallNode) n);
+			case ID: return visitNode((IdNode) n);
+			case BOOL: return visitNode((BoolNode) n);
+			case INT: return visitNode((IntNode) n);
+			case ARROW_TYPE: return visitNode((ArrowTypeNode) n);
+			case BOOL_TYPE: return visitNode((BoolTypeNode) n);
+			case INT_TYPE: return visitNode((IntTypeNode) n);
+			case GREATER_EQUAL: return visitNode((GreaterEqualNode) n);
+			case LESS_EQUAL: return visitNode((LessEqualNode) n);
+			case NOT: return visitNode((NotNode) n);
+			case MINUS: return visitNode((MinusNode) n);
+			case OR: return visitNode((OrNode) n);
+			case DIV: return visitNode((DivNode) n);
+			case AND: return visitNode((AndNode) n);
+			case CLASS: return visitNode((ClassNode) n);
+			case FIELD: return visitNode((FieldNode) n);
+			case METHOD: return visitNode((MethodNode) n);
+			case CLASS_CALL: return visitNode((ClassCallNode) n);
+			case NEW: return visitNode((NewNode) n);
+			case EMPTY: return visitNode((EmptyNode) n);
+			case CLASS_TYPE: return visitNode((ClassTypeNode) n);
+			case METHOD_TYPE: return visitNode((MethodTypeNode) n);
+			case REF_TYPE: return visitNode((RefTypeNode) n);
+			case EMPTY_TYPE: return visitNode((EmptyTypeNode) n);
+			default: return v.accept(this);
+		}
 	}
 
 	public S visitNode(ProgLetInNode n) throws E {throw new UnimplException();}
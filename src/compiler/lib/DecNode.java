@@ -3,6 +3,8 @@ package compiler.lib;
 public abstract class DecNode extends Node {
 	
 	protected TypeNode type;
+
+	protected DecNode(int k) { super(k); }
 		
 	public TypeNode getType() {return type;}
 
@@ -1,5 +1,7 @@
 package compiler.lib;
 
+import java.util.*;
+
 public class FOOLlib {
 
 	public static String extractNodeName(String s) { // s is in the form compiler.AST$NameNode
@@ -37,13 +39,29 @@ public class FOOLlib {
 		return "function"+(funlabCount++);
 	}
 
-	private static String funCode = null;
+	private static List<String> funCode = new ArrayList<>();
 
 	public static void putCode(String c) {
-		funCode = nlJoin(funCode, "", c); //linea vuota di separazione prima di codice funzione
+		funCode.add(c);
+	}
+
+	public static String getCode() { //linea vuota di separazione prima di codice funzione
+		if (funCode.isEmpty()) return null;
+		StringBuilder code = new StringBuilder();
+		for (String c : funCode) if (c!=null) code.append(code.length()==0?"\n":"\n\n").append(c);
+		return code.toString();
+	}
+
+	// frammenti di codice funzione inseriti con putCode a partire dal from-esimo (compilazione incrementale)
+	public static int codeFragments() {
+		return funCode.size();
+	}
+
+	public static List<String> getCodeFragments(int from) {
+		return new ArrayList<>(funCode.subList(from, funCode.size()));
 	}
 
-	public static String getCode() {
-		return funCode;
+	public static void resetCode() {
+		funCode = new ArrayList<>();
 	}
 }
@@ -0,0 +1,60 @@
+package compiler.lib;
+
+// mappa ad indirizzamento aperto con chiavi int non negative (simboli dell'Interner), senza boxing
+public class IntMap<V> {
+
+	private int[] keys = new int[8]; // chiave+1, 0 indica posizione libera
+	private Object[] vals = new Object[8];
+	private int size = 0;
+
+	private int slot(int key) {
+		int mask = keys.length-1;
+		int h = key * 0x9E3779B9;
+		int i = (h ^ h >>> 16) & mask;
+		while (keys[i] != 0 && keys[i] != key+1) i = (i+1) & mask;
+		return i;
+	}
+
+	@SuppressWarnings("unchecked")
+	public V get(int key) {
+		return (V) vals[slot(key)];
+	}
+
+	// ritorna il valore precedentemente associato a key (null se non c'era)
+	@SuppressWarnings("unchecked")
+	public V put(int key, V value) {
+		int i = slot(key);
+		V old = (V) vals[i];
+		if (keys[i] == 0) {
+			keys[i] = key+1;
+			if (++size*2 > keys.length) { vals[i] = value; grow(); return null; }
+		}
+		vals[i] = value;
+		return old;
+	}
+
+	public IntMap<V> copy() {
+		IntMap<V> m = new IntMap<>();
+		m.keys = keys.clone();
+		m.vals = vals.clone();
+		m.size = size;
+		return m;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		Object[] oldVals = vals;
+		keys = new int[oldKeys.length*2];
+		vals = new Object[oldKeys.length*2];
+		for (int j = 0; j < oldKeys.length; j++)
+			if (oldKeys[j] != 0) {
+				int i = slot(oldKeys[j]-1);
+				keys[i] = oldKeys[j];
+				vals[i] = oldVals[j];
+			}
+	}
+}
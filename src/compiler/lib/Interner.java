@@ -0,0 +1,29 @@
+package compiler.lib;
+
+import java.util.*;
+
+// associa ad ogni identificatore distinto di una compilazione un intero denso (simbolo),
+// in modo che le fasi successive possano usare array e mappe con chiavi primitive
+public class Interner {
+
+	private final Map<String, Integer> ids = new HashMap<>();
+	private final List<String> names = new ArrayList<>();
+
+	public int intern(String name) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+
+	public String name(int sym) {
+		return names.get(sym);
+	}
+
+	public int size() {
+		return names.size();
+	}
+}
@@ -0,0 +1,84 @@
+package compiler.lib;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.misc.Interval;
+
+// CharStream ANTLR su un file mappato in memoria: il lexer legge i byte direttamente dalla mappatura, senza
+// la copia dell'intero file nell'heap fatta da CharStreams.fromFileName (buffer dei code point, che cresce per
+// raddoppi durante la decodifica). Ogni byte e' un carattere: i sorgenti FOOL e l'assembly SVM sono ASCII
+// (un byte oltre 127 viene letto come carattere Latin-1 e segnalato dal lexer come carattere non valido).
+// Il testo dei token viene estratto dalla mappatura solo quando richiesto. Il file non va modificato
+// finche' lo stream e' in uso
+public final class MappedCharStream implements CharStream {
+
+	private final ByteBuffer bytes;
+	private final int size;
+	private final String name;
+	private int p = 0; // indice del prossimo carattere
+
+	private MappedCharStream(ByteBuffer b, String n) {
+		bytes = b;
+		size = b.limit();
+		name = n;
+	}
+
+	public static MappedCharStream fromFileName(String fileName) throws IOException {
+		try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE) throw new IOException(fileName+" is too large to be mapped ("+length+" bytes)");
+			return new MappedCharStream(channel.map(FileChannel.MapMode.READ_ONLY, 0, length), fileName); // la mappatura resta valida dopo la chiusura
+		}
+	}
+
+	// byte del file letti dalla mappatura invece che copiati nell'heap
+	public int mappedBytes() { return size; }
+
+	@Override
+	public void consume() {
+		if (p >= size) throw new IllegalStateException("cannot consume EOF");
+		p++;
+	}
+
+	@Override
+	public int LA(int i) {
+		if (i == 0) return 0; // non definito
+		int index = i > 0 ? p+i-1 : p+i;
+		if (index < 0 || index >= size) return IntStream.EOF;
+		return bytes.get(index) & 0xFF;
+	}
+
+	@Override
+	public int mark() { return -1; } // tutto il file e' sempre disponibile
+
+	@Override
+	public void release(int marker) {}
+
+	@Override
+	public int index() { return p; }
+
+	@Override
+	public void seek(int index) { p = Math.min(index, size); }
+
+	@Override
+	public int size() { return size; }
+
+	@Override
+	public String getSourceName() { return name; }
+
+	@Override
+	public String getText(Interval interval) {
+		int start = Math.max(interval.a, 0), stop = Math.min(interval.b, size-1);
+		if (start > stop) return "";
+		byte[] text = new byte[stop-start+1];
+		for (int i = 0; i < text.length; i++) text[i] = bytes.get(start+i);
+		return new String(text, StandardCharsets.ISO_8859_1);
+	}
+
+	@Override
+	public String toString() { return getText(Interval.of(0, size-1)); }
+}
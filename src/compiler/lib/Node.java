@@ -3,6 +3,9 @@ package compiler.lib;
 public abstract class Node implements Visitable {
 	
 	int line=-1;  // line -1 means unset
+	public final byte kind; // tag denso del tipo di nodo (vedi NodeKind), usato per il dispatch
+
+	protected Node(int k) { kind = (byte) k; }
 	
 	public void setLine(int l) { line=l; }
 
@@ -0,0 +1,16 @@
+package compiler.lib;
+
+// tag interi densi dei tipi di nodo dell'AST (vedi Node.kind)
+public final class NodeKind {
+
+	public static final int PROG_LET_IN = 0, PROG = 1, FUN = 2, PAR = 3, VAR = 4, PRINT = 5, IF = 6,
+		EQUAL = 7, TIMES = 8, PLUS = 9, CALL = 10, ID = 11, BOOL = 12, INT = 13,
+		ARROW_TYPE = 14, BOOL_TYPE = 15, INT_TYPE = 16,
+		GREATER_EQUAL = 17, LESS_EQUAL = 18, NOT = 19, MINUS = 20, OR = 21, DIV = 22, AND = 23,
+		CLASS = 24, FIELD = 25, METHOD = 26, CLASS_CALL = 27, NEW = 28, EMPTY = 29,
+		CLASS_TYPE = 30, METHOD_TYPE = 31, REF_TYPE = 32, EMPTY_TYPE = 33;
+
+	public static final int COUNT = 34;
+
+	private NodeKind() {}
+}
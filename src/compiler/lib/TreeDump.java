@@ -0,0 +1,148 @@
+package compiler.lib;
+
+import java.io.*;
+import java.util.*;
+
+// destinazione di un dump dell'AST: riceve, nell'ordine di visita (pre-ordine), un evento per riga
+// (profondita', marcatore, nome del nodo, informazioni aggiuntive) e lo scrive nel formato scelto
+// su un PrintWriter bufferizzato, che viene svuotato solo alla fine del dump
+public abstract class TreeDump {
+
+	protected final PrintWriter out;
+
+	protected TreeDump(PrintWriter w) { out = w; }
+
+	public abstract void node(int depth, String mark, String name, String info);
+
+	// chiude il documento; omitted e' il numero di sottoalberi esclusi dai limiti di profondita' e di nodi
+	public void finish(int omitted) { out.flush(); }
+
+	public static final List<String> FORMATS = List.of("text", "json", "dot");
+
+	public static TreeDump of(String format, PrintWriter w) {
+		switch (format) {
+			case "text": return new Text(w);
+			case "json": return new Json(w);
+			case "dot": return new Dot(w);
+			default: throw new IllegalArgumentException("Unknown dump format: "+format+" (expected: text | json | dot)");
+		}
+	}
+
+	private static String quote(String s) {
+		return "\""+s.replace("\\", "\\\\").replace("\"", "\\\"")+"\"";
+	}
+
+	// una riga per nodo, indentata di due spazi per livello; il marcatore precede il nome del nodo
+	// e resta nell'indentazione dei discendenti (come la stampa dei visitor in modalita' debug)
+	private static class Text extends TreeDump {
+		private String[] prefix = new String[16];     // indentazione dell'ultimo nodo visto a ogni profondita'
+		private String[] plain = new String[16];      // indentazione senza marcatore, calcolata a partire da plainOf
+		private String[] plainOf = new String[16];
+
+		Text(PrintWriter w) { super(w); }
+
+		@Override
+		public void node(int depth, String mark, String name, String info) {
+			if (depth == prefix.length) {
+				prefix = Arrays.copyOf(prefix, depth*2);
+				plain = Arrays.copyOf(plain, depth*2);
+				plainOf = Arrays.copyOf(plainOf, depth*2);
+			}
+			String parent = depth == 0 ? null : prefix[depth-1];
+			if (plain[depth] == null || plainOf[depth] != parent) {
+				plain[depth] = parent == null ? "" : parent+"  ";
+				plainOf[depth] = parent;
+			}
+			String p = mark.isEmpty() ? plain[depth] : plain[depth]+mark;
+			prefix[depth] = p;
+			out.print(p);
+			out.print(name);
+			if (info != null) {
+				out.print(": ");
+				out.print(info);
+			}
+			out.println();
+		}
+
+		@Override
+		public void finish(int omitted) {
+			if (omitted > 0) out.println("... "+omitted+" subtrees omitted");
+			out.flush();
+		}
+	}
+
+	// {"ast":[nodo],"omitted":n}, dove nodo e' {"node":nome,"mark":..,"info":..,"children":[nodi]}
+	private static class Json extends TreeDump {
+		private int[] open = new int[16];          // profondita' dei nodi non ancora chiusi
+		private boolean[] hasChildren = new boolean[16];
+		private int size = 0, roots = 0;
+		private boolean started = false;
+
+		Json(PrintWriter w) { super(w); }
+
+		private void close(int depth) {
+			while (size > 0 && open[size-1] >= depth) out.print(hasChildren[--size] ? "]}" : "}");
+		}
+
+		@Override
+		public void node(int depth, String mark, String name, String info) {
+			if (!started) {
+				out.print("{\"ast\":[");
+				started = true;
+			}
+			close(depth);
+			if (size > 0) {
+				out.print(hasChildren[size-1] ? "," : ",\"children\":[");
+				hasChildren[size-1] = true;
+			} else if (roots++ > 0) {
+				out.print(",");
+			}
+			out.println();
+			out.print("{\"node\":"+quote(name));
+			if (!mark.isEmpty()) out.print(",\"mark\":"+quote(mark));
+			if (info != null) out.print(",\"info\":"+quote(info));
+			if (size == open.length) {
+				open = Arrays.copyOf(open, size*2);
+				hasChildren = Arrays.copyOf(hasChildren, size*2);
+			}
+			open[size] = depth;
+			hasChildren[size++] = false;
+		}
+
+		@Override
+		public void finish(int omitted) {
+			if (!started) out.print("{\"ast\":[");
+			close(0);
+			out.println("],\"omitted\":"+omitted+"}");
+			out.flush();
+		}
+	}
+
+	// grafo Graphviz: un nodo per riga, un arco dal padre; il marcatore etichetta l'arco
+	private static class Dot extends TreeDump {
+		private int[] ids = new int[16]; // id dell'ultimo nodo visto a ogni profondita'
+		private int count = 0;
+
+		Dot(PrintWriter w) {
+			super(w);
+			out.println("digraph AST {");
+			out.println("  node [shape=box, fontname=\"monospace\"];");
+		}
+
+		@Override
+		public void node(int depth, String mark, String name, String info) {
+			int id = count++;
+			out.println("  n"+id+" [label="+quote(info == null ? name : name+"\n"+info).replace("\n", "\\n")+"];");
+			if (depth > 0) out.println("  n"+ids[depth-1]+" -> n"+id+(mark.isEmpty() ? "" : " [label="+quote(mark)+"]")+";");
+			if (depth == ids.length) ids = Arrays.copyOf(ids, depth*2);
+			ids[depth] = id;
+		}
+
+		@Override
+		public void finish(int omitted) {
+			if (omitted > 0) out.println("  // "+omitted+" subtrees omitted");
+			out.println("}");
+			out.flush();
+		}
+	}
+}
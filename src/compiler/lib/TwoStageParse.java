@@ -0,0 +1,44 @@
+package compiler.lib;
+
+import java.util.function.Function;
+import org.antlr.v4.runtime.*;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+
+// parsing in due fasi: prima in modalita' SLL abbandonando al primo errore, che basta per quasi tutti
+// gli input corretti ed e' molto piu' veloce; solo se fallisce si riparte da capo in modalita' LL completa
+// con la normale strategia di recupero e segnalazione degli errori.
+// La seconda fase usa un nuovo parser, perche' le azioni eseguite nella prima (es. nel parser SVM)
+// non vanno ripetute sullo stesso stato; i token gia' letti dal lexer vengono riusati.
+public class TwoStageParse<P extends Parser, T> {
+
+	public final P parser;         // parser che ha prodotto l'albero (e gli eventuali errori sintattici)
+	public final T tree;
+	public final boolean fallback; // true se e' stata necessaria la fase LL
+	public final long nanos;       // durata complessiva del parsing
+
+	private TwoStageParse(P p, T t, boolean f, long n) { parser = p; tree = t; fallback = f; nanos = n; }
+
+	public static <P extends Parser, T> TwoStageParse<P,T> parse(CommonTokenStream tokens,
+			Function<TokenStream,P> newParser, Function<P,T> rule) {
+		long start = System.nanoTime();
+		P parser = newParser.apply(tokens);
+		parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+		parser.removeErrorListeners();
+		parser.setErrorHandler(new BailErrorStrategy());
+		try {
+			T tree = rule.apply(parser);
+			return new TwoStageParse<>(parser, tree, false, System.nanoTime()-start);
+		} catch (ParseCancellationException e) {
+			tokens.seek(0);
+			parser = newParser.apply(tokens);
+			T tree = rule.apply(parser);
+			return new TwoStageParse<>(parser, tree, true, System.nanoTime()-start);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "Parsing took "+nanos/1000+" us ("+(fallback?"SLL failed, LL":"SLL")+").";
+	}
+}
@@ -2,4 +2,6 @@ package compiler.lib;
 
 public abstract class TypeNode extends Node {
 
+	protected TypeNode(int k) { super(k); }
+
 }
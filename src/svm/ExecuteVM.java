@@ -1,4 +1,9 @@
 package svm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class ExecuteVM {
     
     public static final int CODESIZE = 10000;
@@ -14,107 +19,305 @@ public class ExecuteVM {
     private int fp = MEMSIZE; 
     private int ra;           
     private int tm;
+
+    private OutputSink out;
+
+    // esecuzione a tranche: run(budget) esegue al piu' budget istruzioni e si puo' richiamare per riprendere
+    public enum Status { HALTED, YIELDED, INSTRUCTION_QUOTA_EXCEEDED, MEMORY_QUOTA_EXCEEDED, FAILED }
+
+    private long instructionQuota = Long.MAX_VALUE; // istruzioni eseguibili in totale
+    private int memoryQuota = MEMSIZE;  // parole occupate al massimo da heap e stack insieme
+    private int spLimit = 0;            // valore minimo di sp consentito dalla quota di memoria
+    // regioni di memoria usate (da azzerare per riusare la SVM, vedi VMPool): heap in [0,hpHigh], stack in [spLow,MEMSIZE)
+    private int hpHigh = 0;
+    private int spLow = MEMSIZE;
+    private int spCheck = MEMSIZE;      // max(spLow, spLimit): sotto questo valore push aggiorna spLow e controlla la quota
+    private boolean stray = false;      // scrittura fuori dalle regioni usate: va azzerata tutta la memoria
+    private int breakpoint = -1;        // indirizzo a cui run si ferma (vedi runTo)
+    private long executed = 0;
+    private Status status;              // stato finale, null finche' l'esecuzione puo' proseguire
+    private RuntimeException failure;   // causa dello stato FAILED
+    // tabelle di memoizzazione (istruzioni mget e mput), create al primo uso
+    private MemoTable[] memo = new MemoTable[0];
+    private int memoCapacity = 1024;
+    private MemoTable.Eviction memoEviction = MemoTable.Eviction.LRU;
+
+    private static final RuntimeException MEMORY_QUOTA_EXCEEDED = new RuntimeException(null, null, false, false) {};
     
     public ExecuteVM(int[] code) {
+      this(code, OutputSink.buffered(System.out));
+    }
+
+    public ExecuteVM(int[] code, OutputSink out) {
+      this(code, null, out);
+    }
+
+    // data e' il segmento dati del programma (SVMParser.data), copiato all'inizio della memoria
+    public ExecuteVM(int[] code, int[] data, OutputSink out) {
       this.code = code;
+      this.out = out;
+      if (data != null) loadData(data);
+    }
+
+    // nuova esecuzione che riparte dallo stato salvato in s (l'output gia' prodotto viene ristampato su out)
+    public ExecuteVM(Snapshot s, OutputSink out) {
+      restore(s, out);
     }
     
+    public void setInstructionQuota(long instructions) {
+      instructionQuota = instructions;
+    }
+
+    // elementi per tabella di memoizzazione (0 la disabilita) e politica di rimpiazzamento
+    public void setMemoization(int capacity, MemoTable.Eviction eviction) {
+      memoCapacity = capacity;
+      memoEviction = eviction;
+    }
+
+    // tabelle di memoizzazione usate, per indice (null se la tabella non e' stata usata)
+    public List<MemoTable> memoTables() {
+      return Collections.unmodifiableList(Arrays.asList(memo));
+    }
+
+    private MemoTable memo(int k) {
+      if (k >= memo.length) memo = Arrays.copyOf(memo, k+1);
+      if (memo[k] == null) memo[k] = new MemoTable(memoCapacity, memoEviction);
+      return memo[k];
+    }
+
+    public void setMemoryQuota(int words) {
+      memoryQuota = words;
+      spLimit = hp+MEMSIZE-memoryQuota;
+      spCheck = Math.max(spLow, spLimit);
+    }
+
+    // prepara la SVM, con memoria gia' azzerata, per una nuova esecuzione di code con segmento dati data
+    void reset(int[] code, int[] data, OutputSink out) {
+      this.code = code;
+      this.out = out;
+      ip = 0;
+      sp = fp = MEMSIZE;
+      hp = ra = tm = 0;
+      instructionQuota = Long.MAX_VALUE;
+      memoryQuota = MEMSIZE;
+      spLimit = 0;
+      spCheck = spLow;
+      executed = 0;
+      status = null;
+      failure = null;
+      memo = new MemoTable[0];
+      memoCapacity = 1024;
+      memoEviction = MemoTable.Eviction.LRU;
+      if (data != null) loadData(data);
+    }
+
+    // copia il segmento dati (vedi SVM.g4) all'inizio della memoria: l'heap parte dopo
+    private void loadData(int[] data) {
+      System.arraycopy(data, 0, memory, 0, data.length);
+      hp = data.length;
+      hpHigh = Math.max(hpHigh, data.length);
+    }
+
+    // come reset, ripartendo dallo stato salvato in s
+    void restore(Snapshot s, OutputSink out) {
+      reset(s.code, null, out); // il segmento dati e' gia' nell'heap salvato
+      System.arraycopy(s.heap, 0, memory, 0, s.heap.length);
+      System.arraycopy(s.stack, 0, memory, MEMSIZE-s.stack.length, s.stack.length);
+      ip = s.ip;
+      sp = s.sp;
+      hp = s.hp;
+      fp = s.fp;
+      ra = s.ra;
+      tm = s.tm;
+      hpHigh = s.hpHigh;
+      spLow = spCheck = s.sp;
+      stray = s.stray;
+      s.output.replay(out);
+    }
+
+    // registri e regioni di memoria usate; output e' l'output prodotto finora
+    Snapshot snapshot(OutputSink.Collector output) {
+      int heapEnd = stray ? sp : Math.min(hpHigh+1, sp);
+      return new Snapshot(code, ip, sp, hp, fp, ra, tm, hpHigh, stray,
+        Arrays.copyOf(memory, heapEnd), Arrays.copyOfRange(memory, sp, MEMSIZE), output);
+    }
+
+    // esegue (al piu' budget istruzioni) fino a raggiungere l'istruzione di indirizzo address, senza eseguirla;
+    // ritorna YIELDED se l'ha raggiunta o se ha esaurito il budget
+    public Status runTo(int address, long budget) {
+      breakpoint = address;
+      try {
+        return run(budget);
+      } finally {
+        breakpoint = -1;
+      }
+    }
+
+    public int ip() { return ip; }
+
+    // azzera solo le regioni di memoria usate dall'ultima esecuzione; ritorna il numero di parole azzerate
+    int clearMemory() {
+      int cleared;
+      if (stray) {
+        Arrays.fill(memory, 0);
+        cleared = MEMSIZE;
+      } else {
+        int heapEnd = Math.min(hpHigh+1, spLow);
+        Arrays.fill(memory, 0, heapEnd, 0);
+        Arrays.fill(memory, spLow, MEMSIZE, 0);
+        cleared = heapEnd+MEMSIZE-spLow;
+      }
+      hpHigh = 0;
+      spLow = spCheck = MEMSIZE;
+      stray = false;
+      return cleared;
+    }
+
+    public long executed() { return executed; }
+
+    public int usedMemory() { return hp+MEMSIZE-sp; }
+
+    public RuntimeException failure() { return failure; }
+
+    // esegue fino all'HALT (senza quote); gli errori a runtime vengono rilanciati
     public void cpu() {
-      while ( true ) {
-        int bytecode = code[ip++]; // fetch
-        int v1,v2;
-        int address;
-        switch ( bytecode ) {
-          case SVMParser.PUSH:
-            push( code[ip++] );
-            break;
-          case SVMParser.POP:
-            pop();
-            break;
-          case SVMParser.ADD :
-            v1=pop();
-            v2=pop();
-            push(v2 + v1);
-            break;
-          case SVMParser.MULT :
-            v1=pop();
-            v2=pop();
-            push(v2 * v1);
-            break;
-          case SVMParser.DIV :
-            v1=pop();
-            v2=pop();
-            push(v2 / v1);
-            break;
-          case SVMParser.SUB :
-            v1=pop();
-            v2=pop();
-            push(v2 - v1);
-            break;
-          case SVMParser.STOREW : //
-            address = pop();
-            memory[address] = pop();    
-            break;
-          case SVMParser.LOADW : //
-            address = pop();
-            push(memory[address]);
-            break;
-          case SVMParser.BRANCH : 
-            address = code[ip];
-            ip = address;
-            break;
-          case SVMParser.BRANCHEQ :
-            address = code[ip++];
-            v1=pop();
-            v2=pop();
-            if (v2 == v1) ip = address;
-            break;
-          case SVMParser.BRANCHLESSEQ :
-            address = code[ip++];
-            v1=pop();
-            v2=pop();
-            if (v2 <= v1) ip = address;
-            break;
-          case SVMParser.JS : //
-            address = pop();
-            ra = ip;
-            ip = address;
-            break;
-         case SVMParser.STORERA : //
-            ra=pop();
-            break;
-         case SVMParser.LOADRA : //
-            push(ra);
-            break;
-         case SVMParser.STORETM : 
-            tm=pop();
-            break;
-         case SVMParser.LOADTM : 
-            push(tm);
-            break;
-         case SVMParser.LOADFP : //
-            push(fp);
-            break;
-         case SVMParser.STOREFP : //
-            fp=pop();
-            break;
-         case SVMParser.COPYFP : //
-            fp=sp;
-            break;
-         case SVMParser.STOREHP : //
-            hp=pop();
-            break;
-         case SVMParser.LOADHP : //
-            push(hp);
-            break;
-         case SVMParser.PRINT :
-            System.out.println((sp<MEMSIZE)?memory[sp]:"Empty stack!");
-            break;
-         case SVMParser.HALT :
-            return;
+      if (run(Long.MAX_VALUE) == Status.FAILED) throw failure;
+    }
+
+    // esegue al piu' budget istruzioni; ritorna YIELDED se l'esecuzione puo' essere ripresa,
+    // altrimenti lo stato finale (ad ogni chiamata successiva). L'output viene svuotato alla terminazione
+    public Status run(long budget) {
+      if (status != null) return status;
+      long n = Math.min(budget, instructionQuota-executed), left = n;
+      try {
+        while (left > 0) {
+          if (ip == breakpoint) return Status.YIELDED;
+          left--;
+          int bytecode = code[ip++]; // fetch
+          int v1,v2;
+          int address;
+          switch ( bytecode ) {
+            case SVMParser.PUSH:
+              push( code[ip++] );
+              break;
+            case SVMParser.POP:
+              pop();
+              break;
+            case SVMParser.ADD :
+              v1=pop();
+              v2=pop();
+              push(v2 + v1);
+              break;
+            case SVMParser.MULT :
+              v1=pop();
+              v2=pop();
+              push(v2 * v1);
+              break;
+            case SVMParser.DIV :
+              v1=pop();
+              v2=pop();
+              push(v2 / v1);
+              break;
+            case SVMParser.SUB :
+              v1=pop();
+              v2=pop();
+              push(v2 - v1);
+              break;
+            case SVMParser.STOREW : //
+              address = pop();
+              memory[address] = pop();    
+              if (address > hpHigh && address < spLow) stray = true;
+              break;
+            case SVMParser.LOADW : //
+              address = pop();
+              push(memory[address]);
+              break;
+            case SVMParser.BRANCH : 
+              address = code[ip];
+              ip = address;
+              break;
+            case SVMParser.BRANCHEQ :
+              address = code[ip++];
+              v1=pop();
+              v2=pop();
+              if (v2 == v1) ip = address;
+              break;
+            case SVMParser.BRANCHLESSEQ :
+              address = code[ip++];
+              v1=pop();
+              v2=pop();
+              if (v2 <= v1) ip = address;
+              break;
+            case SVMParser.JS : //
+              address = pop();
+              ra = ip;
+              ip = address;
+              break;
+           case SVMParser.STORERA : //
+              ra=pop();
+              break;
+           case SVMParser.LOADRA : //
+              push(ra);
+              break;
+           case SVMParser.STORETM : 
+              tm=pop();
+              break;
+           case SVMParser.LOADTM : 
+              push(tm);
+              break;
+           case SVMParser.LOADFP : //
+              push(fp);
+              break;
+           case SVMParser.STOREFP : //
+              fp=pop();
+              break;
+           case SVMParser.COPYFP : //
+              fp=sp;
+              break;
+           case SVMParser.STOREHP : //
+              hp=pop();
+              if (hp > hpHigh) hpHigh = hp;
+              spLimit = hp+MEMSIZE-memoryQuota;
+              spCheck = Math.max(spLow, spLimit);
+              if (sp < spLimit) throw MEMORY_QUOTA_EXCEEDED;
+              break;
+           case SVMParser.LOADHP : //
+              push(hp);
+              break;
+           case SVMParser.PRINT :
+              if (sp<MEMSIZE) out.print(memory[sp]);
+              else out.print("Empty stack!");
+              break;
+           case SVMParser.MGET : { // argomenti della funzione corrente: memory[fp+1 .. fp+n], con n in cima allo stack
+              v1=pop();
+              Integer value = memo(code[ip++]).get(memory, fp+1, v1);
+              push(value == null ? 0 : value); // risultato memorizzato e 1, oppure 0 e 0
+              push(value == null ? 0 : 1);
+              break;
+           }
+           case SVMParser.MPUT : // memorizza il valore sotto n, senza prelevarlo
+              v1=pop();
+              memo(code[ip++]).put(memory, fp+1, v1, memory[sp]);
+              break;
+           case SVMParser.HALT :
+              status = Status.HALTED;
+              return status;
+          }
+        }
+        if (executed+n >= instructionQuota) status = Status.INSTRUCTION_QUOTA_EXCEEDED;
+        return status == null ? Status.YIELDED : status;
+      } catch (RuntimeException e) {
+        if (e == MEMORY_QUOTA_EXCEEDED) status = Status.MEMORY_QUOTA_EXCEEDED;
+        else {
+          failure = e;
+          status = Status.FAILED;
         }
+        return status;
+      } finally {
+        executed += n-left;
+        if (status != null) out.flush(); // anche se l'esecuzione termina per un errore
       }
-    } 
+    }
     
     private int pop() {
       return memory[sp++];
@@ -122,6 +325,11 @@ public class ExecuteVM {
     
     private void push(int v) {
       memory[--sp] = v;
+      if (sp < spCheck) {
+        if (sp < spLow) spLow = sp;
+        if (sp < spLimit) throw MEMORY_QUOTA_EXCEEDED;
+        spCheck = Math.max(spLow, spLimit);
+      }
     }
     
 }
\ No newline at end of file
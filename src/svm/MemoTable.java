@@ -0,0 +1,69 @@
+package svm;
+
+import java.util.*;
+
+// tabella di memoizzazione di una funzione (istruzioni mget e mput della SVM): associa la sequenza degli argomenti
+// al risultato, con al piu' capacity elementi. Quando e' piena l'inserimento elimina l'elemento usato meno di
+// recente (LRU) o quello inserito per primo (FIFO); con capacity 0 la memoizzazione e' disabilitata
+public final class MemoTable {
+
+	public enum Eviction { LRU, FIFO }
+
+	private static final class Key {
+		final int[] args;
+		final int hash;
+
+		Key(int[] memory, int from, int n) {
+			args = Arrays.copyOfRange(memory, from, from+n);
+			hash = Arrays.hashCode(args);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(args, ((Key) o).args);
+		}
+
+		@Override
+		public int hashCode() { return hash; }
+	}
+
+	private final int capacity;
+	private final LinkedHashMap<Key, Integer> entries;
+	private long hits, misses, evictions;
+
+	public MemoTable(int capacity, Eviction eviction) {
+		this.capacity = capacity;
+		entries = new LinkedHashMap<Key, Integer>(16, 0.75f, eviction == Eviction.LRU) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+				if (size() <= MemoTable.this.capacity) return false;
+				evictions++;
+				return true;
+			}
+		};
+	}
+
+	// risultato per gli argomenti memory[from .. from+n-1], null se non presente
+	Integer get(int[] memory, int from, int n) {
+		Integer v = capacity == 0 ? null : entries.get(new Key(memory, from, n));
+		if (v == null) misses++;
+		else hits++;
+		return v;
+	}
+
+	void put(int[] memory, int from, int n, int value) {
+		if (capacity > 0) entries.put(new Key(memory, from, n), value);
+	}
+
+	public long hits() { return hits; }
+	public long misses() { return misses; }
+	public long evictions() { return evictions; }
+	public int size() { return entries.size(); }
+
+	@Override
+	public String toString() {
+		return hits+" hits, "+misses+" misses, "+evictions+" evictions, "+size()+"/"+capacity+" entries";
+	}
+}
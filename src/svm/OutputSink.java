@@ -0,0 +1,129 @@
+package svm;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+// destinazione dell'output dell'istruzione PRINT: un valore (o un messaggio d'errore) per riga.
+// La SVM chiama flush all'HALT (e se l'esecuzione termina per un'eccezione)
+public interface OutputSink {
+
+	void print(int value);
+
+	void print(String message);
+
+	default void flush() {}
+
+	// righe accumulate in un buffer di byte e scritte su out quando il buffer e' pieno o alla flush
+	static OutputSink buffered(OutputStream out) { return new Buffered(out); }
+
+	// valori e messaggi ricevuti da consumer distinti (es. per chi incorpora la SVM)
+	static OutputSink callback(IntConsumer values, Consumer<String> messages) {
+		return new OutputSink() {
+			@Override
+			public void print(int value) { values.accept(value); }
+			@Override
+			public void print(String message) { messages.accept(message); }
+		};
+	}
+
+	class Buffered implements OutputSink {
+		private static final byte[] NEWLINE = System.lineSeparator().getBytes();
+		private final OutputStream out;
+		private final byte[] buffer = new byte[8192];
+		private int size = 0;
+
+		Buffered(OutputStream o) { out = o; }
+
+		@Override
+		public void print(int value) {
+			if (size+11+NEWLINE.length > buffer.length) drain();
+			long v = value;
+			if (v < 0) {
+				buffer[size++] = '-';
+				v = -v;
+			}
+			int digits = 1;
+			for (long t = v; t >= 10; t /= 10) digits++;
+			int end = size+digits;
+			for (int i = end-1; i >= size; i--, v /= 10) buffer[i] = (byte) ('0'+v%10);
+			size = end;
+			for (byte b : NEWLINE) buffer[size++] = b;
+		}
+
+		@Override
+		public void print(String message) {
+			drain();
+			try {
+				out.write((message+System.lineSeparator()).getBytes());
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		private void drain() {
+			try {
+				out.write(buffer, 0, size);
+				size = 0;
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		public void flush() {
+			drain();
+			try {
+				out.flush();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+
+	// raccoglie l'output in memoria (es. per i test)
+	class Collector implements OutputSink {
+		private int[] values = new int[64];
+		private int size = 0;
+		private final StringBuilder text = new StringBuilder();
+		private final List<String> messages = new ArrayList<>();
+		private final List<Integer> messageAt = new ArrayList<>(); // numero di valori stampati prima di ciascun messaggio
+
+		@Override
+		public void print(int value) {
+			if (size == values.length) values = Arrays.copyOf(values, size*2);
+			values[size++] = value;
+			text.append(value).append('\n');
+		}
+
+		@Override
+		public void print(String message) {
+			messages.add(message);
+			messageAt.add(size);
+			text.append(message).append('\n');
+		}
+
+		// ristampa su to l'output raccolto, nello stesso ordine
+		public void replay(OutputSink to) {
+			int v = 0;
+			for (int m = 0; m < messages.size(); m++) {
+				for (; v < messageAt.get(m); v++) to.print(values[v]);
+				to.print(messages.get(m));
+			}
+			for (; v < size; v++) to.print(values[v]);
+		}
+
+		// valori stampati, in ordine
+		public int[] values() { return Arrays.copyOf(values, size); }
+
+		// output completo, una riga per PRINT separata da '\n'
+		public String text() { return text.toString(); }
+
+		public void clear() {
+			size = 0;
+			text.setLength(0);
+			messages.clear();
+			messageAt.clear();
+		}
+	}
+}
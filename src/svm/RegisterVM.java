@@ -0,0 +1,212 @@
+package svm;
+
+// macchina virtuale a registri, alternativa alla SVM a stack: ogni istruzione legge e scrive direttamente
+// i registri del frame corrente, cosi' ad esempio a+b*c richiede due istruzioni invece di cinque push/pop.
+// Un registro r e' la cella memory[fp+r] del frame corrente (r puo' essere negativo). Layout di un frame
+// di una funzione con n parametri (gli stessi offset delle entry della symbol table):
+//   fp+n+1 fp del chiamante (control link)
+//   fp+1 .. fp+n parametri
+//   fp     access link
+//   fp-1   indirizzo di ritorno (il registro del chiamante che riceve il risultato e' un operando della CALL)
+//   fp-2 .. dichiarazioni locali, poi temporanei (fino a fp-m, con m riservato da ENTER m)
+// L'heap cresce da 0 verso l'alto come nella SVM (stesso layout di oggetti e dispatch table),
+// i frame crescono da MEMSIZE verso il basso; il frame globale ha fp = GLOBAL_FP.
+// Il codice e' prodotto direttamente come int[] (vedi compiler.RegisterCodeGenerationASTVisitor).
+public class RegisterVM {
+
+	public static final int MEMSIZE = ExecuteVM.MEMSIZE;
+	public static final int GLOBAL_FP = MEMSIZE-1;
+
+	// codice operativo seguito dagli operandi (d, a, b, s, t, l: registri; k, o, n, m: costanti; L: indirizzo)
+	public static final int
+		CONST = 0,  // d k        r[d] = k
+		MOV = 1,    // d s        r[d] = r[s]
+		ADD = 2,    // d a b      r[d] = r[a] + r[b]
+		SUB = 3,    // d a b
+		MUL = 4,    // d a b
+		DIV = 5,    // d a b
+		EQ = 6,     // d a b      r[d] = r[a] == r[b] ? 1 : 0
+		LE = 7,     // d a b      r[d] = r[a] <= r[b] ? 1 : 0
+		NOT = 8,    // d a        r[d] = 1 - r[a]
+		OR = 9,     // d a b      r[d] = r[a] | r[b] (booleani)
+		JMP = 10,   // L
+		JF = 11,    // a L        salta a L se r[a] == 0
+		LINK = 12,  // d k        r[d] = frame a distanza k lungo la catena degli access link (0: fp)
+		LUP = 13,   // d k o      r[d] = memory[LINK(k)+o]
+		LDG = 14,   // d o        r[d] = memory[GLOBAL_FP+o]
+		LOAD = 15,  // d a o      r[d] = memory[r[a]+o]
+		CALL = 16,  // d L k a n  chiama L con access link LINK(k) (GLOBAL_FP se k = -1) e argomenti r[a], r[a-1] .. r[a-n+1];
+		            //            il risultato va in r[d]
+		CALLI = 17, // d t l a n  come CALL, all'indirizzo r[t] e con access link r[l]
+		RET = 18,   // s n        ritorna r[s] da una funzione con n parametri
+		ENTER = 19, // m          riserva i registri fino a -m
+		NEW = 20,   // d t a n    r[d] = nuovo oggetto con dispatch pointer r[t] e campi r[a] .. r[a-n+1]
+		LHP = 21,   // d          r[d] = hp
+		SHW = 22,   // k          memory[hp++] = k
+		PRINT = 23, // a
+		HALT = 24;
+
+	private final int[] code;
+	private final int[] memory = new int[MEMSIZE];
+	private final OutputSink out;
+	private long executed = 0;
+
+	public RegisterVM(int[] code) {
+		this(code, OutputSink.buffered(System.out));
+	}
+
+	public RegisterVM(int[] code, OutputSink out) {
+		this.code = code;
+		this.out = out;
+	}
+
+	public long executed() { return executed; }
+
+	public void cpu() {
+		int[] code = this.code, memory = this.memory;
+		int ip = 0, fp = GLOBAL_FP, sp = GLOBAL_FP, hp = 0;
+		long n = 0;
+		try {
+			while (true) {
+				n++;
+				switch (code[ip]) {
+					case CONST:
+						memory[fp+code[ip+1]] = code[ip+2];
+						ip += 3;
+						break;
+					case MOV:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]];
+						ip += 3;
+						break;
+					case ADD:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]] + memory[fp+code[ip+3]];
+						ip += 4;
+						break;
+					case SUB:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]] - memory[fp+code[ip+3]];
+						ip += 4;
+						break;
+					case MUL:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]] * memory[fp+code[ip+3]];
+						ip += 4;
+						break;
+					case DIV:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]] / memory[fp+code[ip+3]];
+						ip += 4;
+						break;
+					case EQ:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]] == memory[fp+code[ip+3]] ? 1 : 0;
+						ip += 4;
+						break;
+					case LE:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]] <= memory[fp+code[ip+3]] ? 1 : 0;
+						ip += 4;
+						break;
+					case NOT:
+						memory[fp+code[ip+1]] = 1 - memory[fp+code[ip+2]];
+						ip += 3;
+						break;
+					case OR:
+						memory[fp+code[ip+1]] = memory[fp+code[ip+2]] | memory[fp+code[ip+3]];
+						ip += 4;
+						break;
+					case JMP:
+						ip = code[ip+1];
+						break;
+					case JF:
+						ip = memory[fp+code[ip+1]] == 0 ? code[ip+2] : ip+3;
+						break;
+					case LINK: {
+						int f = fp;
+						for (int k = code[ip+2]; k > 0; k--) f = memory[f];
+						memory[fp+code[ip+1]] = f;
+						ip += 3;
+						break;
+					}
+					case LUP: {
+						int f = fp;
+						for (int k = code[ip+2]; k > 0; k--) f = memory[f];
+						memory[fp+code[ip+1]] = memory[f+code[ip+3]];
+						ip += 4;
+						break;
+					}
+					case LDG:
+						memory[fp+code[ip+1]] = memory[GLOBAL_FP+code[ip+2]];
+						ip += 3;
+						break;
+					case LOAD:
+						memory[fp+code[ip+1]] = memory[memory[fp+code[ip+2]]+code[ip+3]];
+						ip += 4;
+						break;
+					case CALL:
+					case CALLI: {
+						int target, link;
+						if (code[ip] == CALL) {
+							target = code[ip+2];
+							link = fp;
+							int k = code[ip+3];
+							if (k < 0) link = GLOBAL_FP;
+							else for (; k > 0; k--) link = memory[link];
+						} else {
+							target = memory[fp+code[ip+2]];
+							link = memory[fp+code[ip+3]];
+						}
+						int a = code[ip+4], args = code[ip+5];
+						int nfp = sp-args-2;
+						if (nfp-1 < hp) throw new RuntimeException("Out of memory");
+						memory[nfp] = link;
+						for (int i = 0; i < args; i++) memory[nfp+1+i] = memory[fp+a-i];
+						memory[nfp+args+1] = fp;
+						memory[nfp-1] = ip+6;
+						fp = sp = nfp;
+						ip = target;
+						break;
+					}
+					case RET: {
+						int value = memory[fp+code[ip+1]], args = code[ip+2];
+						ip = memory[fp-1];
+						sp = fp+args+2;
+						fp = memory[fp+args+1];
+						memory[fp+code[ip-5]] = value; // registro d della CALL
+						break;
+					}
+					case ENTER:
+						sp = fp-code[ip+1];
+						if (sp < hp) throw new RuntimeException("Out of memory");
+						ip += 2;
+						break;
+					case NEW: {
+						int a = code[ip+3], fields = code[ip+4];
+						if (hp+fields >= sp) throw new RuntimeException("Out of memory");
+						for (int i = 0; i < fields; i++) memory[hp+fields-1-i] = memory[fp+a-i];
+						memory[hp+fields] = memory[fp+code[ip+2]];
+						memory[fp+code[ip+1]] = hp+fields;
+						hp += fields+1;
+						ip += 5;
+						break;
+					}
+					case LHP:
+						memory[fp+code[ip+1]] = hp;
+						ip += 2;
+						break;
+					case SHW:
+						if (hp >= sp) throw new RuntimeException("Out of memory");
+						memory[hp++] = code[ip+1];
+						ip += 2;
+						break;
+					case PRINT:
+						out.print(memory[fp+code[ip+1]]);
+						ip += 2;
+						break;
+					case HALT:
+						return;
+					default:
+						throw new IllegalStateException("Invalid opcode "+code[ip]+" at "+ip);
+				}
+			}
+		} finally {
+			executed += n;
+			out.flush();
+		}
+	}
+}
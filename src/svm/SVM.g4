@@ -13,6 +13,15 @@ public int[] code = new int[ExecuteVM.CODESIZE];
 private int i = 0;
 private Map<String,Integer> labelDef = new HashMap<>();
 private Map<Integer,String> labelRef = new HashMap<>();
+public Integer labelAddress(String label) { return labelDef.get(label); } // null se la label non e' definita
+// segmento dati (direttive data e word): parole caricate in memoria a partire dall'indirizzo 0 quando la SVM
+// viene creata, prima dell'heap (new ExecuteVM(code, data, out)); le label dati hanno come valore l'indirizzo
+// in memoria. Alla fine di assembly l'array contiene esattamente le dataWords() parole del segmento
+public int[] data = new int[ExecuteVM.CODESIZE];
+private int d = 0;
+private Map<Integer,String> dataRef = new HashMap<>();
+public int codeWords() { return i; }
+public int dataWords() { return d; }
 }
 
 /*------------------------------------------------------------------
@@ -21,6 +30,9 @@ private Map<Integer,String> labelRef = new HashMap<>();
    
 assembly: instruction* EOF 	{ for (Integer j: labelRef.keySet()) 
 								code[j]=labelDef.get(labelRef.get(j)); 
+							  for (Integer j: dataRef.keySet()) 
+								data[j]=labelDef.get(dataRef.get(j)); 
+							  data = Arrays.copyOf(data,d);
 							} ;
 
 instruction : 
@@ -54,6 +66,13 @@ instruction :
 	  | STOREHP         {code[i++] = STOREHP;}   //
 	  | PRINT           {code[i++] = PRINT;}
 	  | HALT            {code[i++] = HALT;}
+	  | MGET n=INTEGER  {code[i++] = MGET; 
+			              code[i++] = Integer.parseInt($n.text);}
+	  | MPUT n=INTEGER  {code[i++] = MPUT; 
+			              code[i++] = Integer.parseInt($n.text);}
+	  | DATA l=LABEL    {labelDef.put($l.text,d);}
+	  | WORD n=INTEGER  {data[d++] = Integer.parseInt($n.text);}
+	  | WORD l=LABEL    {dataRef.put(d++,$l.text);}
 	  ;
 	  
 /*------------------------------------------------------------------
@@ -83,6 +102,10 @@ LOADHP	 : 'lhp' ;
 STOREHP	 : 'shp' ;	
 PRINT	 : 'print' ;	
 HALT	 : 'halt' ;	
+MGET	 : 'mget' ;	
+MPUT	 : 'mput' ;	
+DATA	 : 'data' ;	
+WORD	 : 'word' ;	
  
 COL	 : ':' ;
 LABEL	 : ('a'..'z'|'A'..'Z')('a'..'z' | 'A'..'Z' | '0'..'9')* ;
@@ -0,0 +1,95 @@
+package svm;
+
+import org.antlr.v4.runtime.*;
+
+// stato della SVM in un punto dell'esecuzione (registri e regioni di memoria usate), da cui possono
+// ripartire nuove esecuzioni (new ExecuteVM(snapshot, out) o VMPool.acquire(snapshot, out)) copiando
+// solo heap e stack usati. Il compilatore FOOL definisce la label MAIN all'inizio dell'espressione
+// principale, dopo la valutazione delle dichiarazioni:
+// ripartendo da li' si salta l'inizializzazione. Lo snapshot e' immutabile e condivisibile tra thread.
+public final class Snapshot {
+
+	public static final String MAIN = "main";
+
+	final int[] code;
+	final int ip, sp, hp, fp, ra, tm, hpHigh;
+	final boolean stray;
+	final int[] heap;  // memory[0, heap.length)
+	final int[] stack; // memory[sp, MEMSIZE)
+	final OutputSink.Collector output; // output prodotto prima dello snapshot
+
+	Snapshot(int[] code, int ip, int sp, int hp, int fp, int ra, int tm, int hpHigh, boolean stray,
+			int[] heap, int[] stack, OutputSink.Collector output) {
+		this.code = code;
+		this.ip = ip;
+		this.sp = sp;
+		this.hp = hp;
+		this.fp = fp;
+		this.ra = ra;
+		this.tm = tm;
+		this.hpHigh = hpHigh;
+		this.stray = stray;
+		this.heap = heap;
+		this.stack = stack;
+		this.output = output;
+	}
+
+	// esegue code (con segmento dati data) dall'inizio fino all'indirizzo address (al piu' budget istruzioni)
+	// e ne salva lo stato
+	public static Snapshot take(int[] code, int[] data, int address, long budget) {
+		OutputSink.Collector output = new OutputSink.Collector();
+		ExecuteVM vm = new ExecuteVM(code, data, output);
+		ExecuteVM.Status s = vm.runTo(address, budget);
+		if (s == ExecuteVM.Status.FAILED) throw vm.failure();
+		if (s != ExecuteVM.Status.YIELDED || vm.ip() != address)
+			throw new IllegalStateException("Address "+address+" not reached: "+(s == ExecuteVM.Status.YIELDED ? "budget exhausted" : s));
+		return vm.snapshot(output);
+	}
+
+	// snapshot all'inizio dell'espressione principale del programma assemblato da parser
+	// (all'inizio del programma se la label MAIN non e' definita)
+	public static Snapshot take(SVMParser parser) {
+		Integer main = parser.labelAddress(MAIN);
+		return take(parser.code, parser.data, main == null ? 0 : main, Long.MAX_VALUE);
+	}
+
+	// parole di memoria copiate ad ogni ripartenza
+	public int words() { return heap.length+stack.length; }
+
+	// confronta runs esecuzioni complete del programma assemblato con runs ripartenze dallo snapshot
+	// (uso: Snapshot file.asm [runs])
+	public static void main(String[] args) throws Exception {
+		SVMLexer lexer = new SVMLexer(CharStreams.fromFileName(args[0]));
+		SVMParser parser = new SVMParser(new CommonTokenStream(lexer));
+		parser.assembly();
+		if (lexer.lexicalErrors+parser.getNumberOfSyntaxErrors() > 0) {
+			System.out.println("You had: "+lexer.lexicalErrors+" lexical errors and "+parser.getNumberOfSyntaxErrors()+" syntax errors.");
+			return;
+		}
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		Snapshot snapshot = take(parser);
+		VMPool pool = new VMPool(1);
+		OutputSink.Collector full = new OutputSink.Collector(), forked = new OutputSink.Collector();
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < runs; i++) {
+				full.clear();
+				ExecuteVM vm = pool.acquire(parser.code, parser.data, full);
+				vm.cpu();
+				pool.release(vm);
+			}
+			long fullTime = (System.nanoTime()-start)/runs;
+			start = System.nanoTime();
+			for (int i = 0; i < runs; i++) {
+				forked.clear();
+				ExecuteVM vm = pool.acquire(snapshot, forked);
+				vm.cpu();
+				pool.release(vm);
+			}
+			long forkTime = (System.nanoTime()-start)/runs;
+			System.out.println(String.format("Per run: full %.2f us, from snapshot %.2f us (%d words restored).",
+				fullTime/1e3, forkTime/1e3, snapshot.words()));
+		}
+		System.out.println("Same output: "+full.text().equals(forked.text()));
+	}
+}
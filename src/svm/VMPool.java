@@ -0,0 +1,152 @@
+package svm;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.antlr.v4.runtime.*;
+
+// pool di SVM riutilizzabili: al rilascio di una SVM vengono azzerate solo le regioni di memoria
+// effettivamente usate (heap fino al massimo valore di hp, stack dal minimo valore di sp),
+// e all'acquisizione vengono reimpostati i registri. Il codice assemblato e' immutabile durante
+// l'esecuzione, quindi gli stessi array (codice e segmento dati) sono condivisi da tutte le esecuzioni
+// dello stesso programma (vedi assemble, che mantiene una cache indicizzata per testo del programma).
+// Il pool e' utilizzabile da piu' thread.
+public class VMPool {
+
+	private final int maxIdle; // SVM inattive conservate al massimo (le altre vengono lasciate al GC)
+	private final ConcurrentLinkedDeque<ExecuteVM> idle = new ConcurrentLinkedDeque<>();
+	private final AtomicInteger idleCount = new AtomicInteger();
+	private final Map<String, Assembled> assembled = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), discarded = new AtomicLong(),
+		clearedWords = new AtomicLong(), releases = new AtomicLong(), codeHits = new AtomicLong(), codeMisses = new AtomicLong();
+
+	public VMPool(int maxIdle) {
+		this.maxIdle = maxIdle;
+	}
+
+	// crea in anticipo n SVM inattive
+	public void prefill(int n) {
+		for (int i = 0; i < n && idleCount.get() < maxIdle; i++) {
+			idle.push(new ExecuteVM((int[]) null, null));
+			idleCount.incrementAndGet();
+		}
+	}
+
+	// data e' il segmento dati del programma (SVMParser.data)
+	public ExecuteVM acquire(int[] code, int[] data, OutputSink out) {
+		ExecuteVM vm = idle.poll();
+		if (vm == null) {
+			misses.incrementAndGet();
+			return new ExecuteVM(code, data, out);
+		}
+		idleCount.decrementAndGet();
+		hits.incrementAndGet();
+		vm.reset(code, data, out);
+		return vm;
+	}
+
+	// SVM che riparte dallo stato salvato in s
+	public ExecuteVM acquire(Snapshot s, OutputSink out) {
+		ExecuteVM vm = idle.poll();
+		if (vm == null) {
+			misses.incrementAndGet();
+			return new ExecuteVM(s, out);
+		}
+		idleCount.decrementAndGet();
+		hits.incrementAndGet();
+		vm.restore(s, out);
+		return vm;
+	}
+
+	// la SVM non va piu' usata dal chiamante dopo il rilascio
+	public void release(ExecuteVM vm) {
+		releases.incrementAndGet();
+		if (idleCount.incrementAndGet() > maxIdle) {
+			idleCount.decrementAndGet();
+			discarded.incrementAndGet();
+			return;
+		}
+		clearedWords.addAndGet(vm.clearMemory());
+		idle.push(vm); // LIFO: la SVM riusata per prima e' quella con la memoria piu' "calda" in cache
+	}
+
+	// programma assemblato: codice e segmento dati
+	public static final class Assembled {
+		public final int[] code, data;
+
+		Assembled(int[] code, int[] data) {
+			this.code = code;
+			this.data = data;
+		}
+	}
+
+	// codice assemblato di asm, condiviso tra le esecuzioni
+	public Assembled assemble(String asm) {
+		Assembled program = assembled.get(asm);
+		if (program != null) {
+			codeHits.incrementAndGet();
+			return program;
+		}
+		codeMisses.incrementAndGet();
+		SVMLexer lexer = new SVMLexer(CharStreams.fromString(asm));
+		SVMParser parser = new SVMParser(new CommonTokenStream(lexer));
+		parser.assembly();
+		if (lexer.lexicalErrors+parser.getNumberOfSyntaxErrors() > 0)
+			throw new IllegalArgumentException("You had: "+lexer.lexicalErrors+" lexical errors and "+parser.getNumberOfSyntaxErrors()+" syntax errors.");
+		program = new Assembled(parser.code, parser.data);
+		Assembled previous = assembled.putIfAbsent(asm, program);
+		return previous != null ? previous : program;
+	}
+
+	public int idle() { return idleCount.get(); }
+	public long hits() { return hits.get(); }
+	public long misses() { return misses.get(); }
+
+	@Override
+	public String toString() {
+		long r = releases.get()-discarded.get();
+		return "VM pool: "+idle()+"/"+maxIdle+" idle, "+hits()+" hits, "+misses()+" misses, "+discarded.get()+" discarded, "
+			+(r == 0 ? 0 : clearedWords.get()/r)+" words cleared per release (of "+ExecuteVM.MEMSIZE+"); code cache: "
+			+assembled.size()+" programs, "+codeHits.get()+" hits, "+codeMisses.get()+" misses";
+	}
+
+	// confronta runs esecuzioni del programma assemblato con SVM nuove e con SVM del pool
+	// (uso: VMPool file.asm [runs])
+	public static void main(String[] args) throws Exception {
+		String asm = CharStreams.fromFileName(args[0]).toString();
+		int runs = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+		VMPool pool = new VMPool(Runtime.getRuntime().availableProcessors());
+		OutputSink.Collector out = new OutputSink.Collector();
+		for (int round = 0; round < 3; round++) {
+			long start = System.nanoTime();
+			for (int i = 0; i < runs; i++) {
+				SVMParser parser = new SVMParser(new CommonTokenStream(new SVMLexer(CharStreams.fromString(asm))));
+				parser.assembly();
+				new ExecuteVM(parser.code, parser.data, out).cpu();
+				out.clear();
+				if (i == runs/100) break; // assemblare ogni volta e' molto lento: se ne misura una parte
+			}
+			long fresh = (System.nanoTime()-start)/(runs/100+1);
+			start = System.nanoTime();
+			for (int i = 0; i < runs; i++) {
+				Assembled program = pool.assemble(asm);
+				ExecuteVM vm = new ExecuteVM(program.code, program.data, out);
+				vm.cpu();
+				out.clear();
+			}
+			long shared = (System.nanoTime()-start)/runs;
+			start = System.nanoTime();
+			for (int i = 0; i < runs; i++) {
+				Assembled program = pool.assemble(asm);
+				ExecuteVM vm = pool.acquire(program.code, program.data, out);
+				vm.cpu();
+				pool.release(vm);
+				out.clear();
+			}
+			long pooled = (System.nanoTime()-start)/runs;
+			System.out.println(String.format("Per run: assembled each time %.1f us, shared code %.1f us, pooled VM %.1f us.",
+				fresh/1e3, shared/1e3, pooled/1e3));
+		}
+		System.out.println(pool);
+	}
+}
@@ -0,0 +1,96 @@
+package svm;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import org.antlr.v4.runtime.*;
+
+// esegue molte SVM su un insieme di thread: ogni SVM esegue una tranche di al piu' slice istruzioni
+// e, se non e' terminata, viene rimessa in fondo alla coda dell'executor (round robin), cosi' un programma
+// che non termina non monopolizza un thread e la latenza degli altri resta prevedibile.
+// Per default l'executor e' un pool di thread di dimensione fissa; si puo' passare qualunque executor
+// (ad esempio uno a virtual thread, dove disponibili).
+// Una SVM non va eseguita da piu' scheduler o thread contemporaneamente.
+public class VMScheduler implements AutoCloseable {
+
+	private final ExecutorService workers;
+	private final long slice;
+	private final AtomicLong slices = new AtomicLong();
+
+	public VMScheduler(int threads, long slice) {
+		this(Executors.newFixedThreadPool(threads), slice);
+	}
+
+	public VMScheduler(ExecutorService workers, long slice) {
+		this.workers = workers;
+		this.slice = slice;
+	}
+
+	// il risultato si completa con lo stato finale della SVM; cancellarlo interrompe l'esecuzione
+	// alla fine della tranche corrente
+	public CompletableFuture<ExecuteVM.Status> submit(ExecuteVM vm) {
+		CompletableFuture<ExecuteVM.Status> result = new CompletableFuture<>();
+		schedule(vm, result);
+		return result;
+	}
+
+	private void schedule(ExecuteVM vm, CompletableFuture<ExecuteVM.Status> result) {
+		try {
+			workers.execute(() -> {
+				if (result.isDone()) return; // cancellato
+				slices.incrementAndGet();
+				ExecuteVM.Status s = vm.run(slice);
+				if (s == ExecuteVM.Status.YIELDED) schedule(vm, result);
+				else result.complete(s);
+			});
+		} catch (RejectedExecutionException e) { // scheduler chiuso
+			result.cancel(false);
+		}
+	}
+
+	// numero di tranche eseguite
+	public long slices() { return slices.get(); }
+
+	// le SVM non ancora terminate non vengono piu' riprese
+	@Override
+	public void close() {
+		workers.shutdownNow();
+	}
+
+	// esegue copies istanze del programma assemblato e riporta la latenza di ciascuna
+	// (uso: VMScheduler file.asm [copies [threads [slice [instructionQuota]]]])
+	public static void main(String[] args) throws Exception {
+		SVMLexer lexer = new SVMLexer(CharStreams.fromFileName(args[0]));
+		SVMParser parser = new SVMParser(new CommonTokenStream(lexer));
+		parser.assembly();
+		if (lexer.lexicalErrors+parser.getNumberOfSyntaxErrors() > 0) {
+			System.out.println("You had: "+lexer.lexicalErrors+" lexical errors and "+parser.getNumberOfSyntaxErrors()+" syntax errors.");
+			return;
+		}
+		int copies = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+		long slice = args.length > 3 ? Long.parseLong(args[3]) : 10000;
+		long quota = args.length > 4 ? Long.parseLong(args[4]) : Long.MAX_VALUE;
+
+		long start = System.nanoTime();
+		long[] latency = new long[copies];
+		Map<ExecuteVM.Status, Integer> outcomes = new ConcurrentHashMap<>();
+		List<CompletableFuture<?>> runs = new ArrayList<>();
+		try (VMScheduler scheduler = new VMScheduler(threads, slice)) {
+			for (int i = 0; i < copies; i++) {
+				ExecuteVM vm = new ExecuteVM(parser.code, parser.data, new OutputSink.Collector());
+				vm.setInstructionQuota(quota);
+				int k = i;
+				runs.add(scheduler.submit(vm).thenAccept(s -> {
+					latency[k] = System.nanoTime()-start;
+					outcomes.merge(s, 1, Integer::sum);
+				}));
+			}
+			CompletableFuture.allOf(runs.toArray(new CompletableFuture<?>[0])).join();
+			Arrays.sort(latency);
+			System.out.println(copies+" runs on "+threads+" threads in "+scheduler.slices()+" slices of "+slice+" instructions: "+outcomes);
+			System.out.println(String.format("Latency: median %.1f ms, 99th percentile %.1f ms, max %.1f ms.",
+				latency[copies/2]/1e6, latency[(int) (copies*0.99)]/1e6, latency[copies-1]/1e6));
+		}
+	}
+}
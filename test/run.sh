@@ -0,0 +1,41 @@
+#!/bin/sh
+# Regression samples: every test/*.fool lists the output lines it expects in comments of the form
+#   /* expect: <line> */
+# The runner compiles and runs each sample with compiler.Test (in a scratch directory, so that no
+# .asm file is left behind) and checks that those lines appear in its output, in that order.
+#
+# Usage: test/run.sh [compiler.Test flags]
+# Environment: FOOL_CLASSES compiled classes (default: bin), ANTLR_JAR ANTLR jar
+#              (default: first antlr*.jar found in the repository root or in lib/)
+
+TEST_DIR=$(cd "$(dirname "$0")" && pwd)
+HOME_DIR=$(dirname "$TEST_DIR")
+CLASSES=${FOOL_CLASSES:-$HOME_DIR/bin}
+ANTLR_JAR=${ANTLR_JAR:-$(ls "$HOME_DIR"/antlr*.jar "$HOME_DIR"/lib/antlr*.jar 2>/dev/null | head -n 1)}
+
+if [ ! -f "$CLASSES/compiler/Test.class" ] || [ -z "$ANTLR_JAR" ]; then
+	echo "run.sh: set FOOL_CLASSES to the compiled classes and ANTLR_JAR to the ANTLR jar" >&2
+	exit 2
+fi
+
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+failed=0
+for sample in "$TEST_DIR"/*.fool; do
+	name=$(basename "$sample")
+	cp "$sample" "$WORK/$name"
+	if (cd "$WORK" && java -cp "$CLASSES:$ANTLR_JAR" compiler.Test "$name" "$@" 2>&1) |
+		awk -v sample="$sample" '
+			BEGIN {
+				while ((getline line < sample) > 0)
+					if (match(line, /\/\* expect: .* \*\//)) expected[n++] = substr(line, RSTART+11, RLENGTH-14)
+			}
+			i < n && $0 == expected[i] { i++ }
+			END {
+				if (i < n) { print "  missing: " expected[i]; exit 1 }
+			}'
+	then echo "ok     $name"
+	else echo "FAILED $name"; failed=$((failed+1))
+	fi
+done
+[ $failed -eq 0 ] || { echo "$failed failed"; exit 1; }